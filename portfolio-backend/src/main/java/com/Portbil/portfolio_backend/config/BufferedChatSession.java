@@ -0,0 +1,172 @@
+package com.Portbil.portfolio_backend.config;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * File d'envoi sortante bornée autour d'une session WebSocket.
+ * {@link #send} ne bloque jamais : le message est mis en file et un seul drain à la fois écrit sur la socket,
+ * ce qui évite les envois concurrents sur la même session et qu'un client lent ne ralentisse une diffusion de groupe.
+ * Au-delà de la taille de tampon, la politique de débordement s'applique ; un envoi bloqué plus longtemps
+ * que la limite de temps déconnecte le client.
+ */
+public class BufferedChatSession {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    private final WebSocketSession delegate;
+    private final Executor sendExecutor;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimitNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final Counters counters;
+
+    private final Queue<WebSocketMessage<?>> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferSize = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile long sendStartNanos;
+    private volatile boolean closed;
+
+    BufferedChatSession(WebSocketSession delegate, Executor sendExecutor, int bufferSizeLimit, long sendTimeLimitNanos,
+                        OverflowPolicy overflowPolicy, Counters counters) {
+        this.delegate = delegate;
+        this.sendExecutor = sendExecutor;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = sendTimeLimitNanos;
+        this.overflowPolicy = overflowPolicy;
+        this.counters = counters;
+    }
+
+    public WebSocketSession getDelegate() {
+        return delegate;
+    }
+
+    public boolean isOpen() {
+        return !closed && delegate.isOpen();
+    }
+
+    public int getBufferSize() {
+        return bufferSize.get();
+    }
+
+    public int getBufferSizeLimit() {
+        return bufferSizeLimit;
+    }
+
+    public boolean send(WebSocketMessage<?> message) {
+        if (!isOpen()) {
+            counters.dropped.increment();
+            return false;
+        }
+        if (isSendTimeExceeded()) {
+            counters.timedOut.increment();
+            close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Délai d'envoi dépassé"));
+            return false;
+        }
+
+        buffer.add(message);
+        counters.enqueued.increment();
+        if (bufferSize.addAndGet(message.getPayloadLength()) > bufferSizeLimit) {
+            if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                counters.overflowDisconnects.increment();
+                close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Tampon d'envoi saturé"));
+                return false;
+            }
+            dropOldest();
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    public void close(CloseStatus status) {
+        closed = true;
+        buffer.clear();
+        bufferSize.set(0);
+        // Fermeture hors du thread appelant : une socket bloquée ne doit pas bloquer l'émetteur
+        sendExecutor.execute(() -> {
+            try {
+                delegate.close(status);
+            } catch (IOException e) {
+                System.err.println("❌ Erreur lors de la fermeture de la session " + delegate.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private boolean isSendTimeExceeded() {
+        long start = sendStartNanos;
+        return start != 0 && System.nanoTime() - start > sendTimeLimitNanos;
+    }
+
+    private void dropOldest() {
+        while (bufferSize.get() > bufferSizeLimit) {
+            WebSocketMessage<?> dropped = buffer.poll();
+            if (dropped == null) {
+                break;
+            }
+            bufferSize.addAndGet(-dropped.getPayloadLength());
+            counters.dropped.increment();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            sendExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            WebSocketMessage<?> message;
+            while (!closed && (message = buffer.poll()) != null) {
+                bufferSize.addAndGet(-message.getPayloadLength());
+                sendStartNanos = System.nanoTime();
+                try {
+                    delegate.sendMessage(message);
+                    counters.sent.increment();
+                } catch (IOException | IllegalStateException e) {
+                    counters.failed.increment();
+                    close(CloseStatus.SESSION_NOT_RELIABLE);
+                    return;
+                } finally {
+                    sendStartNanos = 0;
+                }
+            }
+        } finally {
+            draining.set(false);
+            // Un message a pu arriver entre le dernier poll et la libération du drain
+            if (!closed && !buffer.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    static final class Counters {
+        final LongAdder enqueued;
+        final LongAdder sent;
+        final LongAdder dropped;
+        final LongAdder failed;
+        final LongAdder timedOut;
+        final LongAdder overflowDisconnects;
+
+        Counters(ChatMetrics metrics) {
+            this.enqueued = metrics.counter("chat.outbound.enqueued");
+            this.sent = metrics.counter("chat.outbound.sent");
+            this.dropped = metrics.counter("chat.outbound.dropped");
+            this.failed = metrics.counter("chat.outbound.failed");
+            this.timedOut = metrics.counter("chat.outbound.send_time_exceeded");
+            this.overflowDisconnects = metrics.counter("chat.outbound.overflow_disconnects");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.Portbil.portfolio_backend.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crée les {@link BufferedChatSession} avec la configuration app.chat.outbound.* et un exécuteur
+ * de threads virtuels partagé pour les drains (une socket lente n'immobilise qu'un thread virtuel).
+ */
+@Component
+public class BufferedChatSessionFactory {
+
+    private final ExecutorService sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final BufferedChatSession.Counters counters;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimitNanos;
+    private final BufferedChatSession.OverflowPolicy overflowPolicy;
+
+    public BufferedChatSessionFactory(
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+            @Value("${app.chat.outbound.send-time-limit-ms:10000}") long sendTimeLimitMs,
+            @Value("${app.chat.outbound.overflow-policy:DROP_OLDEST}") BufferedChatSession.OverflowPolicy overflowPolicy) {
+        this.counters = new BufferedChatSession.Counters(chatMetrics);
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public BufferedChatSession wrap(WebSocketSession session) {
+        return new BufferedChatSession(session, sendExecutor, bufferSizeLimit, sendTimeLimitNanos, overflowPolicy, counters);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+}
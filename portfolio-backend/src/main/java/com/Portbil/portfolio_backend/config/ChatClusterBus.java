@@ -0,0 +1,40 @@
+package com.Portbil.portfolio_backend.config;
+
+import java.util.Collection;
+
+/**
+ * Bus inter-nœuds du chat. Chaque nœud ne connaît que ses propres sessions (annuaire de présence local) :
+ * une trame destinée à un utilisateur absent localement est publiée sur le bus, et le nœud qui détient
+ * sa session la livre. L'implémentation est choisie par app.chat.cluster.bus (in-process ou mongo).
+ */
+public interface ChatClusterBus {
+
+    // Trames à livrer aux sessions des utilisateurs indiqués
+    String DELIVERY_TOPIC = "delivery";
+
+    // Invalidation de l'index d'appartenance d'un groupe (payload = groupId)
+    String GROUP_MEMBERSHIP_TOPIC = "group-membership";
+
+    // Baux de présence des utilisateurs d'un nœud (payload = "<online|offline|heartbeat|resync>|<nodeId>")
+    String PRESENCE_TOPIC = "presence";
+
+    // Début ou fin de saisie d'utilisateurs dans une conversation (payload = "<chatId>|<start|stop>")
+    String TYPING_TOPIC = "typing";
+
+    // Messages indexés ou retirés de l'index de recherche par un nœud (payload = "<index|remove>|<JSON [{id, chatId, content}]>")
+    String SEARCH_TOPIC = "search";
+
+    // Notifications pour les utilisateurs sans session WebSocket ni flux SSE sur le nœud émetteur
+    // (payload = "<epochMillis>|<trame JSON>")
+    String NOTIFICATION_TOPIC = "notification";
+
+    // Publie vers les autres nœuds ; n'est jamais relu par le nœud émetteur
+    void publish(String topic, Collection<String> userIds, String payload);
+
+    void subscribe(String topic, Listener listener);
+
+    @FunctionalInterface
+    interface Listener {
+        void onMessage(Collection<String> userIds, String payload);
+    }
+}
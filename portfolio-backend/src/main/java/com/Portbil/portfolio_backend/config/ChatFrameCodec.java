@@ -0,0 +1,52 @@
+package com.Portbil.portfolio_backend.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.Portbil.portfolio_backend.dto.InboundChatFrame;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodage/décodage des trames du chat avec des ObjectReader/ObjectWriter construits une seule fois :
+ * pas de résolution de type ni de Map intermédiaire par trame.
+ * Une trame encodée est un {@link TextMessage} immuable, partageable entre tous les destinataires d'une diffusion.
+ */
+@Component
+public class ChatFrameCodec {
+
+    private final ObjectReader inboundReader;
+    private final ObjectWriter outboundWriter;
+    private final ObjectWriter errorWriter;
+
+    public ChatFrameCodec() {
+        JsonMapper mapper = JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        this.inboundReader = mapper.readerFor(InboundChatFrame.class);
+        this.outboundWriter = mapper.writerFor(OutboundChatFrame.class);
+        this.errorWriter = mapper.writerFor(Map.class);
+    }
+
+    public InboundChatFrame decode(String payload) throws IOException {
+        return inboundReader.readValue(payload);
+    }
+
+    public TextMessage encode(OutboundChatFrame frame) throws IOException {
+        return new TextMessage(outboundWriter.writeValueAsString(frame));
+    }
+
+    // Trame d'erreur historique : {"error": "..."} sans champ type
+    public TextMessage error(String message) throws IOException {
+        return new TextMessage(errorWriter.writeValueAsString(Map.of("error", message)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.Portbil.portfolio_backend.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Voies d'exécution sérielles du chat. Une clé (paire d'utilisateurs, groupe) est hachée vers une voie parmi
+ * un nombre fixe : les tâches d'une même voie s'exécutent une à une dans l'ordre de soumission, sur un thread
+ * virtuel qui ne vit que tant que la voie a du travail. Deux conversations de voies différentes avancent en parallèle.
+ * Chaque voie est bornée : au-delà, la soumission est refusée plutôt que de retenir le thread d'entrée WebSocket.
+ */
+@Component
+public class ChatLanes {
+
+    private final Lane[] lanes;
+    private final int maxPendingPerLane;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder rejected;
+    private final LongAdder failed;
+
+    public ChatLanes(
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.lanes.count:64}") int laneCount,
+            @Value("${app.chat.lanes.max-pending-per-lane:10000}") int maxPendingPerLane) {
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        this.maxPendingPerLane = maxPendingPerLane;
+        this.rejected = chatMetrics.counter("chat.lanes.rejected");
+        this.failed = chatMetrics.counter("chat.lanes.failed");
+        chatMetrics.gauge("chat.lanes.pending", pending::get);
+    }
+
+    // false si la voie est saturée (ou l'application s'arrête) : la tâche n'a pas été acceptée
+    public boolean submit(String key, LaneTask task) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        return lanes[Math.floorMod(key.hashCode(), lanes.length)].offer(task);
+    }
+
+    // Appelé par le handler avant l'arrêt des tampons de persistance : les tâches acceptées sont exécutées
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("⚠️ " + pending.get() + " tâche(s) de chat non exécutée(s) à l'arrêt");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface LaneTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * File d'une voie. Le compteur fait office de verrou : la soumission qui le fait passer de 0 à 1 démarre
+     * le thread de vidage, qui s'arrête quand il le ramène à 0.
+     */
+    private final class Lane {
+
+        private final Queue<LaneTask> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        boolean offer(LaneTask task) {
+            if (size.get() >= maxPendingPerLane) {
+                rejected.increment();
+                return false;
+            }
+            queue.add(task);
+            pending.incrementAndGet();
+            if (size.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+            return true;
+        }
+
+        private void drain() {
+            do {
+                LaneTask task = queue.poll();
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failed.increment();
+                    System.err.println("❌ Erreur lors du traitement d'une trame de chat : " + e.getMessage());
+                }
+            } while (size.decrementAndGet() > 0);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.Portbil.portfolio_backend.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Compteurs et jauges du chat temps réel, exposés via /api/chat/metrics.
+ * Les composants récupèrent leurs compteurs une fois ({@link #counter(String)}) puis les incrémentent sans recherche.
+ */
+@Component
+public class ChatMetrics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public void gauge(String name, Supplier<? extends Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        counters.forEach((name, adder) -> snapshot.put(name, adder.sum()));
+        gauges.forEach((name, supplier) -> snapshot.put(name, supplier.get()));
+        return snapshot;
+    }
+}
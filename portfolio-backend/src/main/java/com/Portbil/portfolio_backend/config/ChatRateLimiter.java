@@ -0,0 +1,123 @@
+package com.Portbil.portfolio_backend.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.local.SynchronizationStrategy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limitation de débit des trames du chat par utilisateur, avec un seau de jetons bucket4j par budget
+ * (messages, invitations, saisie, accusés de réception / lecture, resynchronisation). Les seaux sont sans verrou (CAS) et rattachés à l'utilisateur, pas à la session :
+ * se reconnecter ne remet pas les compteurs à zéro. Les seaux des utilisateurs déconnectés sont purgés périodiquement,
+ * seulement une fois tous pleins : un seau recréé à la reconnexion est alors identique à celui qui a été purgé.
+ */
+@Component
+public class ChatRateLimiter {
+
+    public enum Budget {
+        MESSAGES("messages"),
+        INVITES("invites"),
+        TYPING("typing"),
+        RECEIPTS("receipts"),
+        // Une trame "sync" rejoue l'historique manqué de toutes les conversations : budget le plus serré
+        SYNC("sync");
+
+        private final String label;
+
+        Budget(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final Map<Budget, Bandwidth> bandwidths = new EnumMap<>(Budget.class);
+    private final Map<Budget, Long> capacities = new EnumMap<>(Budget.class);
+    private final Map<Budget, LongAdder> rejected = new EnumMap<>(Budget.class);
+    private final Map<String, Map<Budget, Bucket>> bucketsByUser = new ConcurrentHashMap<>();
+
+    public ChatRateLimiter(
+            ChatSessionRegistry chatSessionRegistry,
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.rate-limit.messages.capacity:20}") long messagesCapacity,
+            @Value("${app.chat.rate-limit.messages.refill-period-ms:10000}") long messagesRefillMs,
+            @Value("${app.chat.rate-limit.invites.capacity:10}") long invitesCapacity,
+            @Value("${app.chat.rate-limit.invites.refill-period-ms:60000}") long invitesRefillMs,
+            @Value("${app.chat.rate-limit.typing.capacity:10}") long typingCapacity,
+            @Value("${app.chat.rate-limit.typing.refill-period-ms:5000}") long typingRefillMs,
+            @Value("${app.chat.rate-limit.receipts.capacity:100}") long receiptsCapacity,
+            @Value("${app.chat.rate-limit.receipts.refill-period-ms:10000}") long receiptsRefillMs,
+            @Value("${app.chat.rate-limit.sync.capacity:3}") long syncCapacity,
+            @Value("${app.chat.rate-limit.sync.refill-period-ms:60000}") long syncRefillMs) {
+        this.chatSessionRegistry = chatSessionRegistry;
+        // Rafale possible jusqu'à la capacité, recharge progressive de toute la capacité sur la période
+        limit(Budget.MESSAGES, messagesCapacity, messagesRefillMs);
+        limit(Budget.INVITES, invitesCapacity, invitesRefillMs);
+        limit(Budget.TYPING, typingCapacity, typingRefillMs);
+        limit(Budget.RECEIPTS, receiptsCapacity, receiptsRefillMs);
+        limit(Budget.SYNC, syncCapacity, syncRefillMs);
+        for (Budget budget : Budget.values()) {
+            rejected.put(budget, chatMetrics.counter("chat.rate_limit.rejected." + budget.getLabel()));
+        }
+        chatMetrics.gauge("chat.rate_limit.users", bucketsByUser::size);
+    }
+
+    // 0 si la trame est autorisée, sinon le délai en millisecondes avant qu'un jeton soit disponible
+    public long tryConsume(String userId, Budget budget) {
+        Bucket bucket = bucketsByUser.computeIfAbsent(userId, id -> newBuckets()).get(budget);
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
+        if (probe.isConsumed()) {
+            return 0;
+        }
+        rejected.get(budget).increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(probe.getNanosToWaitForRefill()));
+    }
+
+    // Un utilisateur déconnecté juste avant le passage garde ses seaux entamés jusqu'à ce qu'ils se soient rechargés
+    @Scheduled(fixedDelayString = "${app.chat.rate-limit.eviction-interval-ms:300000}")
+    public void evictDisconnectedUsers() {
+        bucketsByUser.entrySet().removeIf(entry -> !chatSessionRegistry.isLocal(entry.getKey()) && isIdle(entry.getValue()));
+    }
+
+    private void limit(Budget budget, long capacity, long refillPeriodMs) {
+        capacities.put(budget, capacity);
+        bandwidths.put(budget, Bandwidth.builder()
+                .capacity(capacity)
+                .refillGreedy(capacity, Duration.ofMillis(refillPeriodMs))
+                .build());
+    }
+
+    private boolean isIdle(Map<Budget, Bucket> buckets) {
+        for (Map.Entry<Budget, Bucket> entry : buckets.entrySet()) {
+            if (entry.getValue().getAvailableTokens() < capacities.get(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Les seaux sont créés ensemble : la map d'un utilisateur n'est plus modifiée ensuite
+    private Map<Budget, Bucket> newBuckets() {
+        Map<Budget, Bucket> buckets = new EnumMap<>(Budget.class);
+        for (Budget budget : Budget.values()) {
+            buckets.put(budget, Bucket.builder()
+                    .addLimit(bandwidths.get(budget))
+                    .withSynchronizationStrategy(SynchronizationStrategy.LOCK_FREE)
+                    .build());
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,118 @@
+package com.Portbil.portfolio_backend.config;
+
+import com.Portbil.portfolio_backend.service.PresenceService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Annuaire de présence local (userId → session de ce nœud) et routage des livraisons :
+ * les destinataires connectés ici reçoivent la trame directement, les autres sont publiés
+ * en une seule fois sur le {@link ChatClusterBus} pour le nœud qui détient leur session.
+ * Un destinataire sans bail de présence n'est connecté nulle part : rien n'est publié pour lui, il retrouvera les
+ * messages persistés par le rejeu à sa connexion.
+ */
+@Component
+public class ChatSessionRegistry {
+
+    private final ChatClusterBus chatClusterBus;
+    private final ChatMetrics chatMetrics;
+    // Paresseux : PresenceService dépend lui-même de l'annuaire local
+    private final ObjectProvider<PresenceService> presenceService;
+    private final LongAdder skippedOffline;
+
+    private final Map<String, BufferedChatSession> sessions = new ConcurrentHashMap<>();
+
+    public ChatSessionRegistry(ChatClusterBus chatClusterBus, ChatMetrics chatMetrics, ObjectProvider<PresenceService> presenceService) {
+        this.chatClusterBus = chatClusterBus;
+        this.chatMetrics = chatMetrics;
+        this.presenceService = presenceService;
+        this.skippedOffline = chatMetrics.counter("chat.delivery.skipped_offline");
+    }
+
+    @PostConstruct
+    public void init() {
+        chatMetrics.gauge("chat.sessions.live", sessions::size);
+        chatMetrics.gauge("chat.outbound.buffered_bytes",
+                () -> sessions.values().stream().mapToLong(BufferedChatSession::getBufferSize).sum());
+        chatClusterBus.subscribe(ChatClusterBus.DELIVERY_TOPIC, this::deliverLocal);
+    }
+
+    public void register(String userId, BufferedChatSession session) {
+        sessions.put(userId, session);
+    }
+
+    // Ne retire que si la session enregistrée est bien celle qui se ferme (reconnexion plus récente possible)
+    public void unregister(String userId, WebSocketSession session) {
+        sessions.computeIfPresent(userId, (id, current) -> current.getDelegate() == session ? null : current);
+    }
+
+    public BufferedChatSession getLocal(String userId) {
+        return sessions.get(userId);
+    }
+
+    public boolean isLocal(String userId) {
+        BufferedChatSession session = sessions.get(userId);
+        return session != null && session.isOpen();
+    }
+
+    public void forEachLocal(BiConsumer<String, BufferedChatSession> action) {
+        sessions.forEach(action);
+    }
+
+    // true si livrée à une session de ce nœud ; sinon la trame part sur le bus si l'utilisateur est en ligne ailleurs
+    public boolean deliver(String userId, TextMessage message) {
+        BufferedChatSession session = sessions.get(userId);
+        if (session != null && session.isOpen()) {
+            return session.send(message);
+        }
+        if (isOnlineElsewhere(userId)) {
+            chatClusterBus.publish(ChatClusterBus.DELIVERY_TOPIC, List.of(userId), message.getPayload());
+        }
+        return false;
+    }
+
+    // Diffusion : envoi local direct, une seule publication sur le bus pour tous les destinataires distants
+    public void deliverAll(Collection<String> userIds, TextMessage message) {
+        List<String> remote = new ArrayList<>();
+        for (String userId : userIds) {
+            BufferedChatSession session = sessions.get(userId);
+            if (session != null && session.isOpen()) {
+                session.send(message);
+            } else if (isOnlineElsewhere(userId)) {
+                remote.add(userId);
+            }
+        }
+        if (!remote.isEmpty()) {
+            chatClusterBus.publish(ChatClusterBus.DELIVERY_TOPIC, remote, message.getPayload());
+        }
+    }
+
+    private boolean isOnlineElsewhere(String userId) {
+        if (presenceService.getObject().isOnline(userId)) {
+            return true;
+        }
+        skippedOffline.increment();
+        return false;
+    }
+
+    private void deliverLocal(Collection<String> userIds, String payload) {
+        TextMessage message = new TextMessage(payload);
+        for (String userId : userIds) {
+            BufferedChatSession session = sessions.get(userId);
+            if (session != null) {
+                session.send(message);
+            }
+        }
+    }
+}
@@ -1,387 +1,361 @@
 package com.Portbil.portfolio_backend.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.Portbil.portfolio_backend.dto.InboundChatFrame;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
 import com.Portbil.portfolio_backend.entity.Message;
-import com.Portbil.portfolio_backend.entity.Notification;
-import com.Portbil.portfolio_backend.entity.User;
-import com.Portbil.portfolio_backend.repository.MessageRepository;
-import com.Portbil.portfolio_backend.repository.NotificationRepository;
 import com.Portbil.portfolio_backend.repository.UserRepository;
-import com.Portbil.portfolio_backend.security.JwtUtil;
+import com.Portbil.portfolio_backend.security.JwtHandshakeInterceptor;
+import com.Portbil.portfolio_backend.service.ChatPersistenceBuffer;
+import com.Portbil.portfolio_backend.service.ChatReplayService;
+import com.Portbil.portfolio_backend.service.ChatSequenceService;
+import com.Portbil.portfolio_backend.service.ConversationService;
+import com.Portbil.portfolio_backend.service.ReadReceiptService;
+import com.Portbil.portfolio_backend.service.GroupMembershipService;
+import com.Portbil.portfolio_backend.service.NotificationService;
+import com.Portbil.portfolio_backend.service.PresenceService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private UserRepository userRepository;
 
     @Autowired
-    private MessageRepository messageRepository;
+    private ChatPersistenceBuffer chatPersistenceBuffer;
 
     @Autowired
-    private UserRepository userRepository;
+    private BufferedChatSessionFactory bufferedChatSessionFactory;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private GroupMembershipService groupMembershipService;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+
+    @Autowired
+    private ChatFrameCodec chatFrameCodec;
 
     @Autowired
-    private NotificationRepository notificationRepository;
+    private ReadReceiptService readReceiptService;
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, String> groupInvitations = new ConcurrentHashMap<>();
-    private final Map<String, String> groupMembers = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private ChatReplayService chatReplayService;
+
+    @Autowired
+    private SessionHeartbeat sessionHeartbeat;
+
+    @Autowired
+    private ChatRateLimiter chatRateLimiter;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ChatLanes chatLanes;
+
+    @Autowired
+    private ChatSequenceService chatSequenceService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    private static final String OUTBOUND_ATTRIBUTE = "chat.outbound";
+
+    private LongAdder expiredSessions;
+
+    @PostConstruct
+    public void registerMetrics() {
+        expiredSessions = chatMetrics.counter("chat.sessions.token_expired");
+    }
+
+    // Le handler est détruit avant les tampons de persistance dont il dépend : les voies y sont vidées en premier
+    @PreDestroy
+    public void drainLanes() {
+        chatLanes.shutdown();
+    }
+
+    // Expiration des tokens vérifiée par balayage périodique plutôt qu'à chaque trame
+    @Scheduled(fixedDelayString = "${app.chat.token-sweep-interval-ms:30000}")
+    public void closeExpiredSessions() {
+        Instant now = Instant.now();
+        chatSessionRegistry.forEachLocal((userId, session) -> {
+            Instant expiresAt = (Instant) session.getDelegate().getAttributes().get(JwtHandshakeInterceptor.TOKEN_EXPIRATION_ATTRIBUTE);
+            if (expiresAt != null && expiresAt.isBefore(now)) {
+                expiredSessions.increment();
+                session.close(CloseStatus.POLICY_VIOLATION.withReason("Token expiré, veuillez renouveler votre token"));
+                System.out.println("⏰ Session WebSocket fermée pour userId " + userId + " : token expiré");
+            }
+        });
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String userId = extractUserId(session);
         if (userId != null) {
-            sessions.put(userId, session);
+            BufferedChatSession outbound = bufferedChatSessionFactory.wrap(session);
+            session.getAttributes().put(OUTBOUND_ATTRIBUTE, outbound);
+            chatSessionRegistry.register(userId, outbound);
+            sessionHeartbeat.register(outbound);
+            presenceService.connected(userId);
             System.out.println("✅ Nouvelle connexion WebSocket pour userId: " + userId);
-            session.sendMessage(new TextMessage("{\"type\":\"connected\",\"userId\":\"" + userId + "\"}"));
+            outbound.send(chatFrameCodec.encode(new OutboundChatFrame.Connected(userId)));
         } else {
             System.out.println("🚫 Connexion WebSocket rejetée: Authentification échouée");
-            session.sendMessage(new TextMessage("{\"error\":\"Token invalide ou expiré, veuillez renouveler votre token\"}"));
+            session.sendMessage(chatFrameCodec.error("Token invalide ou expiré, veuillez renouveler votre token"));
             session.close(CloseStatus.BAD_DATA.withReason("Authentification requise"));
         }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String payload = message.getPayload();
-        Map<String, String> data = objectMapper.readValue(payload, Map.class);
-        String type = data.get("type");
+        sessionHeartbeat.touch(session);
         String fromUserId = extractUserId(session);
-
         if (fromUserId == null) {
-            session.sendMessage(new TextMessage("{\"error\":\"Utilisateur non authentifié\"}"));
+            reply(session, chatFrameCodec.error("Utilisateur non authentifié"));
             return;
         }
 
-        switch (type) {
-            case "private":
-                String toUserId = data.get("toUserId");
-                String content = data.get("content");
-                String receivedChatId = data.get("chatId");
-                sendPrivateMessage(fromUserId, toUserId, content, receivedChatId, session);
-                break;
-
-            case "group_invite":
-                String invitedUserId = data.get("invitedUserId");
-                String groupId = data.get("groupId");
-                inviteToGroup(fromUserId, invitedUserId, groupId);
-                break;
-
-            case "group_message":
-                String groupIdForMessage = data.get("groupId");
-                String groupContent = data.get("content");
-                sendGroupMessage(fromUserId, groupIdForMessage, groupContent);
-                break;
-
-            default:
-                session.sendMessage(new TextMessage("{\"error\":\"Type de message inconnu\"}"));
+        InboundChatFrame frame;
+        try {
+            frame = chatFrameCodec.decode(message.getPayload());
+        } catch (JsonProcessingException e) {
+            reply(session, chatFrameCodec.error("Trame invalide"));
+            return;
+        }
+
+        ChatRateLimiter.Budget budget = switch (frame) {
+            case InboundChatFrame.PrivateMessage p -> ChatRateLimiter.Budget.MESSAGES;
+            case InboundChatFrame.GroupMessage g -> ChatRateLimiter.Budget.MESSAGES;
+            case InboundChatFrame.GroupInvite i -> ChatRateLimiter.Budget.INVITES;
+            case InboundChatFrame.Typing t -> ChatRateLimiter.Budget.TYPING;
+            case InboundChatFrame.Ack a -> ChatRateLimiter.Budget.RECEIPTS;
+            case InboundChatFrame.Read r -> ChatRateLimiter.Budget.RECEIPTS;
+            case InboundChatFrame.Sync s -> ChatRateLimiter.Budget.SYNC;
+            default -> null;
+        };
+        if (budget != null) {
+            long retryAfterMs = chatRateLimiter.tryConsume(fromUserId, budget);
+            if (retryAfterMs > 0 && budget == ChatRateLimiter.Budget.TYPING) {
+                return; // Un indicateur de saisie perdu est sans conséquence : pas de trame d'erreur
+            }
+            if (retryAfterMs > 0) {
+                reply(session, chatFrameCodec.encode(new OutboundChatFrame.RateLimited(
+                        "Trop de requêtes, réessayez dans " + ((retryAfterMs + 999) / 1000) + " s", budget.getLabel(), retryAfterMs)));
+                return;
+            }
+        }
+
+        // Messages et invitations d'une même conversation traités un à un, dans l'ordre d'arrivée : l'horodatage
+        // persisté suit l'ordre de livraison. Clé connue sans lecture MongoDB (paire d'utilisateurs ou groupe).
+        String laneKey = switch (frame) {
+            case InboundChatFrame.PrivateMessage p when p.toUserId() != null -> ConversationService.pairKey(fromUserId, p.toUserId());
+            case InboundChatFrame.GroupMessage g when g.groupId() != null -> g.groupId();
+            case InboundChatFrame.GroupInvite i when i.groupId() != null -> i.groupId();
+            default -> null;
+        };
+        if (laneKey == null) {
+            dispatch(session, fromUserId, frame);
+        } else if (!chatLanes.submit(laneKey, () -> dispatch(session, fromUserId, frame))) {
+            reply(session, chatFrameCodec.error("Serveur surchargé, réessayez plus tard"));
         }
     }
 
+    private void dispatch(WebSocketSession session, String fromUserId, InboundChatFrame frame) throws IOException {
+        switch (frame) {
+            case InboundChatFrame.PrivateMessage privateMessage ->
+                    sendPrivateMessage(fromUserId, privateMessage.toUserId(), privateMessage.content(), session);
+            case InboundChatFrame.GroupInvite groupInvite ->
+                    inviteToGroup(fromUserId, groupInvite.invitedUserId(), groupInvite.groupId());
+            case InboundChatFrame.GroupMessage groupMessage ->
+                    sendGroupMessage(fromUserId, groupMessage.groupId(), groupMessage.content());
+            case InboundChatFrame.Ack ack ->
+                    readReceiptService.markDelivered(fromUserId, ack.chatId(), ack.messageId());
+            case InboundChatFrame.Read read ->
+                    readReceiptService.markRead(fromUserId, read.chatId(), read.messageId());
+            case InboundChatFrame.Typing typing ->
+                    presenceService.typing(fromUserId, typing.chatId(), typing.typing());
+            case InboundChatFrame.Sync sync ->
+                    chatReplayService.replay(fromUserId, (BufferedChatSession) session.getAttributes().get(OUTBOUND_ATTRIBUTE));
+            case InboundChatFrame.Ping ping ->
+                    reply(session, chatFrameCodec.encode(new OutboundChatFrame.Pong()));
+            case InboundChatFrame.Unknown unknown ->
+                    reply(session, chatFrameCodec.error("Type de message inconnu"));
+        }
+    }
+
+    // Réponse du navigateur aux pings protocolaires de SessionHeartbeat
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        sessionHeartbeat.touch(session);
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        sessionHeartbeat.unregister(session);
         String userId = extractUserId(session);
         if (userId != null) {
-            sessions.remove(userId);
-            groupMembers.remove(userId);
+            chatSessionRegistry.unregister(userId, session);
+            presenceService.disconnected(userId);
             System.out.println("🔴 Déconnexion WebSocket pour userId: " + userId);
         }
     }
 
-    // Dans sendPrivateMessage
-    private void sendPrivateMessage(String fromUserId, String toUserId, String content, String receivedChatId, WebSocketSession fromSession) throws IOException {
-        Optional<User> toUserOpt = userRepository.findById(toUserId);
-        if (!toUserOpt.isPresent()) {
-            fromSession.sendMessage(new TextMessage("{\"error\":\"Destinataire introuvable\"}"));
+    // Dans sendPrivateMessage : le registre des conversations fait foi pour le chatId (le chatId du client est ignoré)
+    private void sendPrivateMessage(String fromUserId, String toUserId, String content, WebSocketSession fromSession) throws IOException {
+        String chatId;
+        try {
+            chatId = conversationService.getOrCreatePrivateChatId(fromUserId, toUserId);
+        } catch (IllegalArgumentException e) {
+            reply(fromSession, chatFrameCodec.error("Destinataire introuvable"));
             System.out.println("❌ Destinataire " + toUserId + " introuvable, message non envoyé");
             return;
         }
 
-        String chatId = receivedChatId != null && !receivedChatId.startsWith("temp-") ? receivedChatId : getOrCreatePrivateChatId(fromUserId, toUserId);
-
         Message msg = Message.builder()
+                .id(new ObjectId().toHexString())
                 .type("private")
                 .fromUserId(fromUserId)
                 .toUserId(toUserId)
                 .chatId(chatId)
                 .content(content)
                 .timestamp(Instant.now())
+                .seq(chatSequenceService.next(chatId))
                 .build();
-        messageRepository.save(msg);
-
-        Map<String, String> messageMap = new HashMap<>();
-        messageMap.put("id", msg.getId());
-        messageMap.put("type", "private");
-        messageMap.put("fromUserId", fromUserId);
-        messageMap.put("toUserId", toUserId);
-        messageMap.put("chatId", chatId);
-        messageMap.put("content", content);
-        messageMap.put("timestamp", msg.getTimestamp().toString());
-        String messageJson = objectMapper.writeValueAsString(messageMap);
-
-        WebSocketSession toSession = sessions.get(toUserId);
-        if (toSession != null && toSession.isOpen()) {
-            toSession.sendMessage(new TextMessage(messageJson));
-            Map<String, String> notificationData = new HashMap<>();
-            notificationData.put("chatId", chatId);
-            notificationData.put("fromUserId", fromUserId);
-            sendNotification(toUserId, "new_private_message", "Nouveau message privé de " + fromUserId, notificationData);
-            persistNotification(toUserId, "new_private_message", "Nouveau message privé de " + fromUserId, notificationData);
-        } else {
-            Map<String, String> sentMessageMap = new HashMap<>();
-            sentMessageMap.put("type", "message_sent");
-            sentMessageMap.put("id", msg.getId());
-            sentMessageMap.put("toUserId", toUserId);
-            sentMessageMap.put("chatId", chatId);
-            sentMessageMap.put("content", content);
-            sentMessageMap.put("timestamp", msg.getTimestamp().toString());
-            fromSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(sentMessageMap)));
-            System.out.println("📤 Message envoyé à " + toUserId + " (hors ligne), sauvegardé dans MongoDB avec chatId: " + chatId);
-
-            // Forcer l'envoi de la notification via WebSocket même si hors ligne (sera ignoré si pas connecté)
-            Map<String, String> notificationData = new HashMap<>();
-            notificationData.put("chatId", chatId);
-            notificationData.put("fromUserId", fromUserId);
-            sendNotification(toUserId, "new_private_message", "Nouveau message privé de " + fromUserId, notificationData);
-            persistNotification(toUserId, "new_private_message", "Nouveau message privé de " + fromUserId, notificationData);
+        chatPersistenceBuffer.enqueue(msg); // Persistance différée : la livraison n'attend pas MongoDB
+
+        TextMessage messageFrame = chatFrameCodec.encode(new OutboundChatFrame.PrivateMessage(
+                msg.getId(), fromUserId, toUserId, chatId, content, msg.getTimestamp(), msg.getSeq()));
+
+        // Livraison locale, ou publication sur le bus si le destinataire n'est pas connecté à ce nœud
+        if (!chatSessionRegistry.deliver(toUserId, messageFrame)) {
+            reply(fromSession, chatFrameCodec.encode(new OutboundChatFrame.MessageSent(
+                    msg.getId(), toUserId, chatId, content, msg.getTimestamp(), msg.getSeq())));
+            System.out.println("📤 Message envoyé à " + toUserId + " (hors ligne ou sur un autre nœud), sauvegardé dans MongoDB avec chatId: " + chatId);
         }
+
+        Map<String, String> notificationData = new HashMap<>();
+        notificationData.put("chatId", chatId);
+        notificationData.put("fromUserId", fromUserId);
+        notificationService.notifyUser(toUserId, "new_private_message", fromUserId, notificationData);
     }
 
-    // Dans sendGroupMessage (ajuster de manière similaire)
+    // Dans sendGroupMessage : coût O(membres du groupe) via l'index d'appartenance
     private void sendGroupMessage(String fromUserId, String groupId, String content) throws IOException {
-        addChatIdToUser(fromUserId, groupId);
-        for (Map.Entry<String, String> entry : groupMembers.entrySet()) {
-            if (entry.getValue().equals(groupId) && !entry.getKey().equals(fromUserId)) {
-                addChatIdToUser(entry.getKey(), groupId);
-            }
+        Set<String> members = groupMembershipService.getMembers(groupId);
+        if (!members.contains(fromUserId)) {
+            deliver(fromUserId, chatFrameCodec.error("Vous n'êtes pas membre de ce groupe"));
+            return;
         }
 
         Message msg = Message.builder()
+                .id(new ObjectId().toHexString())
                 .type("group_message")
                 .fromUserId(fromUserId)
                 .groupId(groupId)
                 .chatId(groupId)
                 .content(content)
                 .timestamp(Instant.now())
+                .seq(chatSequenceService.next(groupId))
                 .build();
-        messageRepository.save(msg);
-
-        Map<String, String> messageMap = new HashMap<>();
-        messageMap.put("id", msg.getId());
-        messageMap.put("type", "group_message");
-        messageMap.put("fromUserId", fromUserId);
-        messageMap.put("groupId", groupId);
-        messageMap.put("chatId", groupId);
-        messageMap.put("content", content);
-        messageMap.put("timestamp", msg.getTimestamp().toString());
-        String messageJson = objectMapper.writeValueAsString(messageMap);
-
-        for (Map.Entry<String, String> entry : groupMembers.entrySet()) {
-            if (entry.getValue().equals(groupId) && !entry.getKey().equals(fromUserId)) {
-                WebSocketSession memberSession = sessions.get(entry.getKey());
-                if (memberSession != null && memberSession.isOpen()) {
-                    memberSession.sendMessage(new TextMessage(messageJson));
-                    Map<String, String> notificationData = new HashMap<>();
-                    notificationData.put("groupId", groupId);
-                    notificationData.put("fromUserId", fromUserId);
-                    sendNotification(entry.getKey(), "new_group_message", "Nouveau message dans le groupe " + groupId + " de " + fromUserId, notificationData);
-                    persistNotification(entry.getKey(), "new_group_message", "Nouveau message dans le groupe " + groupId + " de " + fromUserId, notificationData);
-                } else {
-                    Map<String, String> notificationData = new HashMap<>();
-                    notificationData.put("groupId", groupId);
-                    notificationData.put("fromUserId", fromUserId);
-                    sendNotification(entry.getKey(), "new_group_message", "Nouveau message dans le groupe " + groupId + " de " + fromUserId, notificationData);
-                    persistNotification(entry.getKey(), "new_group_message", "Nouveau message dans le groupe " + groupId + " de " + fromUserId, notificationData);
-                }
-            }
-        }
-        WebSocketSession fromSession = sessions.get(fromUserId);
-        if (fromSession != null && fromSession.isOpen()) {
-            fromSession.sendMessage(new TextMessage(messageJson));
-        }
-    }
+        chatPersistenceBuffer.enqueue(msg); // Persistance différée : la livraison n'attend pas MongoDB
 
-    private void inviteToGroup(String fromUserId, String invitedUserId, String groupId) throws IOException {
-        WebSocketSession invitedSession = sessions.get(invitedUserId);
-        if (invitedSession != null && invitedSession.isOpen()) {
-            groupInvitations.put(groupId + "_" + invitedUserId, invitedUserId);
-            groupMembers.put(invitedUserId, groupId);
-
-            addChatIdToUser(fromUserId, groupId);
-            addChatIdToUser(invitedUserId, groupId);
-
-            Map<String, String> inviteMessageMap = new HashMap<>();
-            inviteMessageMap.put("type", "group_invite");
-            inviteMessageMap.put("fromUserId", fromUserId);
-            inviteMessageMap.put("invitedUserId", invitedUserId);
-            inviteMessageMap.put("groupId", groupId);
-            inviteMessageMap.put("timestamp", Instant.now().toString());
-            String inviteMessage = objectMapper.writeValueAsString(inviteMessageMap);
-
-            invitedSession.sendMessage(new TextMessage(inviteMessage));
-            Map<String, String> inviteSentMap = new HashMap<>();
-            inviteSentMap.put("type", "invite_sent");
-            inviteSentMap.put("groupId", groupId);
-            inviteSentMap.put("invitedUserId", invitedUserId);
-            sessions.get(fromUserId).sendMessage(new TextMessage(objectMapper.writeValueAsString(inviteSentMap)));
-            System.out.println("✅ Invitation envoyée à " + invitedUserId + " pour le groupe " + groupId);
-
-            // Notification pour l'invité
-            Map<String, String> notificationData = new HashMap<>();
-            notificationData.put("groupId", groupId);
-            notificationData.put("fromUserId", fromUserId);
-            sendNotification(invitedUserId, "group_invite", "Vous avez été invité au groupe " + groupId + " par " + fromUserId, notificationData);
-            persistNotification(invitedUserId, "group_invite", "Vous avez été invité au groupe " + groupId + " par " + fromUserId, notificationData);
-        } else {
-            sessions.get(fromUserId).sendMessage(new TextMessage("{\"error\":\"Utilisateur invité hors ligne\"}"));
-            // Persister la notification pour l'utilisateur hors ligne
-            Map<String, String> notificationData = new HashMap<>();
-            notificationData.put("groupId", groupId);
-            notificationData.put("fromUserId", fromUserId);
-            persistNotification(invitedUserId, "group_invite", "Vous avez été invité au groupe " + groupId + " par " + fromUserId, notificationData);
-        }
-    }
+        // Trames sérialisées une seule fois et partagées par tous les destinataires
+        TextMessage messageFrame = chatFrameCodec.encode(new OutboundChatFrame.GroupMessage(
+                msg.getId(), fromUserId, groupId, groupId, content, msg.getTimestamp(), msg.getSeq()));
 
-    // Envoyer une notification
-    public void sendNotification(String toUserId, String notificationType, String messageContent, Map<String, String> additionalData) throws IOException {
-        WebSocketSession session = sessions.get(toUserId);
-        if (session != null && session.isOpen()) {
-            Map<String, Object> notification = new HashMap<>();
-            notification.put("type", "notification");
-            notification.put("notificationType", notificationType);
-            notification.put("message", messageContent);
-            notification.put("timestamp", Instant.now().toString());
-            if (additionalData != null) {
-                notification.putAll(additionalData);
+        Map<String, String> notificationData = new HashMap<>();
+        notificationData.put("groupId", groupId);
+        notificationData.put("fromUserId", fromUserId);
+
+        List<String> recipients = new ArrayList<>(members.size());
+        for (String memberId : members) {
+            if (!memberId.equals(fromUserId)) {
+                recipients.add(memberId);
             }
-            String notificationJson = objectMapper.writeValueAsString(notification);
-            session.sendMessage(new TextMessage(notificationJson));
-            System.out.println("📢 Notification envoyée à " + toUserId + ": " + notificationJson);
-        } else {
-            System.out.println("ℹ️ Utilisateur " + toUserId + " non connecté, notification non envoyée en temps réel.");
         }
-    }
 
-    // Persister une notification dans MongoDB (maintenant public)
-    public void persistNotification(String toUserId, String notificationType, String messageContent, Map<String, String> additionalData) {
-        try {
-            Notification notification = Notification.builder()
-                    .id(UUID.randomUUID().toString())
-                    .userId(toUserId)
-                    .type(notificationType)
-                    .message(messageContent)
-                    .timestamp(Instant.now())
-                    .isRead(false)
-                    .data(additionalData != null ? additionalData : new HashMap<>())
-                    .build();
-            notificationRepository.save(notification);
-            System.out.println("💾 Notification persistantée pour " + toUserId + ": " + notification.getMessage());
-        } catch (Exception e) {
-            System.err.println("❌ Erreur lors de la persistance de la notification pour " + toUserId + ": " + e.getMessage());
-        }
+        // Une seule publication sur le bus par trame pour l'ensemble des membres connectés ailleurs
+        chatSessionRegistry.deliverAll(members, messageFrame);
+        notificationService.notifyUsers(recipients, "new_group_message", fromUserId, notificationData);
     }
 
-    private String extractUserId(WebSocketSession session) {
-        String authHeader = session.getHandshakeHeaders().getFirst("Authorization");
-        System.out.println("🔍 Received Authorization header: " + authHeader);
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            System.out.println("🔍 Extracted JWT token from header: " + token);
-            try {
-                String userId = jwtUtil.extractUserId(token);
-                System.out.println("🔍 Extracted userId from header: " + userId);
-                return userId;
-            } catch (Exception e) {
-                System.out.println("🔴 Token invalide dans le header: " + e.getMessage());
-            }
+    private void inviteToGroup(String fromUserId, String invitedUserId, String groupId) throws IOException {
+        boolean exists = groupMembershipService.exists(groupId);
+        if (exists && !groupMembershipService.isMember(groupId, fromUserId)) {
+            deliver(fromUserId, chatFrameCodec.error("Vous n'êtes pas membre de ce groupe"));
+            return;
         }
-
-        String query = session.getUri().getQuery();
-        System.out.println("🔍 Query string: " + query);
-        if (query != null && query.startsWith("token=")) {
-            String token = query.substring(6);
-            System.out.println("🔍 Extracted JWT token from URL: " + token);
-            try {
-                String userId = jwtUtil.extractUserId(token);
-                System.out.println("🔍 Extracted userId from URL: " + userId);
-                return userId;
-            } catch (Exception e) {
-                System.out.println("🔴 Token invalide dans l’URL: " + e.getMessage());
-            }
+        if (!exists && groupMembershipService.isPrivateChat(groupId)) {
+            deliver(fromUserId, chatFrameCodec.error("Impossible d'inviter dans une conversation privée"));
+            return;
         }
-
-        System.out.println("🔴 No valid Authorization header or token found");
-        return null;
-    }
-
-    private String getOrCreatePrivateChatId(String fromUserId, String toUserId) {
-        User fromUser = userRepository.findById(fromUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + fromUserId));
-        User toUser = userRepository.findById(toUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + toUserId));
-
-        List<Message> existingMessages = messageRepository.findByTypeAndFromUserIdAndToUserId("private", fromUserId, toUserId);
-        existingMessages.addAll(messageRepository.findByTypeAndFromUserIdAndToUserId("private", toUserId, fromUserId));
-        if (!existingMessages.isEmpty()) {
-            String existingChatId = existingMessages.get(0).getChatId();
-            System.out.println("🔍 ChatId existant trouvé dans les messages: " + existingChatId);
-            if (!fromUser.getChatIds().contains(existingChatId)) {
-                fromUser.getChatIds().add(existingChatId);
-                userRepository.save(fromUser);
-            }
-            if (!toUser.getChatIds().contains(existingChatId)) {
-                toUser.getChatIds().add(existingChatId);
-                userRepository.save(toUser);
-            }
-            return existingChatId;
+        if (!userRepository.existsById(invitedUserId)) {
+            deliver(fromUserId, chatFrameCodec.error("Utilisateur invité introuvable"));
+            return;
         }
 
-        for (String chatId : fromUser.getChatIds()) {
-            if (toUser.getChatIds().contains(chatId)) {
-                System.out.println("🔍 ChatId commun existant trouvé: " + chatId);
-                return chatId;
-            }
+        // L'appartenance est persistée (collection groups + chatIds) que l'invité soit connecté ou non
+        if (!groupMembershipService.isMember(groupId, fromUserId)) {
+            groupMembershipService.addMember(groupId, fromUserId, fromUserId);
         }
+        groupMembershipService.addMember(groupId, invitedUserId, fromUserId);
+
+        boolean online = deliver(invitedUserId, chatFrameCodec.encode(
+                new OutboundChatFrame.GroupInvite(fromUserId, invitedUserId, groupId, Instant.now())));
+        deliver(fromUserId, chatFrameCodec.encode(new OutboundChatFrame.InviteSent(groupId, invitedUserId)));
+        System.out.println("✅ " + invitedUserId + " ajouté au groupe " + groupId + (online ? "" : " (hors ligne)"));
+
+        // Notification pour l'invité (temps réel via WebSocket ou SSE si connecté, toujours persistée)
+        Map<String, String> notificationData = new HashMap<>();
+        notificationData.put("groupId", groupId);
+        notificationData.put("fromUserId", fromUserId);
+        notificationService.notifyUser(invitedUserId, "group_invite", fromUserId, notificationData);
+    }
 
-        String newChatId = UUID.randomUUID().toString();
-        addChatIdToUser(fromUserId, newChatId);
-        addChatIdToUser(toUserId, newChatId);
-        System.out.println("✅ Nouveau chatId créé: " + newChatId);
-        return newChatId;
+    // Envoi non bloquant via la file sortante locale, sinon relais sur le bus ; false si non livré sur ce nœud
+    private boolean deliver(String userId, TextMessage message) {
+        return chatSessionRegistry.deliver(userId, message);
     }
 
-    private void addChatIdToUser(String userId, String chatId) {
-        try {
-            User user = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + userId));
-            if (!user.getChatIds().contains(chatId)) {
-                user.getChatIds().add(chatId);
-                userRepository.save(user);
-                System.out.println("✅ Added chatId " + chatId + " to user " + userId);
-            } else {
-                System.out.println("ℹ️ ChatId " + chatId + " déjà présent pour user " + userId);
-            }
-        } catch (Exception e) {
-            System.err.println("❌ Erreur lors de l'ajout du chatId " + chatId + " à l'utilisateur " + userId + ": " + e.getMessage());
-            throw e;
+    // Réponse à l'émetteur d'une trame, via sa file sortante pour ne jamais écrire en concurrence sur la socket
+    private void reply(WebSocketSession session, TextMessage frame) throws IOException {
+        BufferedChatSession outbound = (BufferedChatSession) session.getAttributes().get(OUTBOUND_ATTRIBUTE);
+        if (outbound != null) {
+            outbound.send(frame);
+        } else {
+            session.sendMessage(frame);
         }
     }
 
-    public Map<String, String> getGroupMembers() {
-        return groupMembers;
+    // Identité résolue une fois au handshake (JwtHandshakeInterceptor) : simple lecture d'attribut par trame
+    private String extractUserId(WebSocketSession session) {
+        return (String) session.getAttributes().get(JwtHandshakeInterceptor.USER_ID_ATTRIBUTE);
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.Portbil.portfolio_backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Bus d'un déploiement mono-nœud : il n'existe aucun autre nœud, une trame publiée n'a donc personne à atteindre.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.chat.cluster", name = "bus", havingValue = "in-process", matchIfMissing = true)
+public class InProcessChatClusterBus implements ChatClusterBus {
+
+    @Override
+    public void publish(String topic, Collection<String> userIds, String payload) {
+        // Destinataire non connecté à l'unique nœud : il est hors ligne
+    }
+
+    @Override
+    public void subscribe(String topic, Listener listener) {
+        // Rien ne sera jamais reçu d'un autre nœud
+    }
+}
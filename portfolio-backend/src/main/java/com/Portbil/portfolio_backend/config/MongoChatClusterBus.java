@@ -0,0 +1,222 @@
+package com.Portbil.portfolio_backend.config;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bus inter-nœuds sur une collection capped MongoDB : chaque publication est un document inséré,
+ * chaque nœud suit la collection avec un curseur tailable et ignore ses propres publications.
+ * Le suivi se fait toujours dans l'ordre naturel (ordre d'insertion sur le serveur) : les _id sont générés par les
+ * nœuds émetteurs et leur ordre dépend de leurs horloges, ils ne servent qu'à retrouver le dernier événement vu.
+ * Les publications ne bloquent pas l'appelant (voie d'une conversation, flush) : elles passent par une file bornée
+ * qu'un thread dédié insère par lots ordonnés (insertMany), dans l'ordre de publication. File pleine : l'appelant
+ * insère lui-même.
+ * Fonctionne avec un mongod local (pas de replica set requis).
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.chat.cluster", name = "bus", havingValue = "mongo")
+public class MongoChatClusterBus implements ChatClusterBus {
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final long cappedSizeBytes;
+    private final String nodeId;
+    private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+    private final BlockingQueue<Document> outbox;
+    private final int publishBatchSize;
+    private final LongAdder published;
+    private final LongAdder publishFailed;
+
+    private MongoCollection<Document> collection;
+    private volatile boolean running;
+    private Thread tailer;
+    private Thread publisher;
+
+    public MongoChatClusterBus(
+            MongoTemplate mongoTemplate,
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.cluster.collection:chat_bus}") String collectionName,
+            @Value("${app.chat.cluster.capped-size-bytes:67108864}") long cappedSizeBytes,
+            @Value("${app.chat.cluster.node-id:${random.uuid}}") String nodeId,
+            @Value("${app.chat.cluster.publish-queue-capacity:10000}") int publishQueueCapacity,
+            @Value("${app.chat.cluster.publish-batch-size:500}") int publishBatchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.cappedSizeBytes = cappedSizeBytes;
+        this.nodeId = nodeId;
+        this.outbox = new ArrayBlockingQueue<>(publishQueueCapacity);
+        this.publishBatchSize = publishBatchSize;
+        this.published = chatMetrics.counter("chat.cluster.published");
+        this.publishFailed = chatMetrics.counter("chat.cluster.publish_failed");
+        chatMetrics.gauge("chat.cluster.outbox", outbox::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(collectionName)) {
+            try {
+                mongoTemplate.createCollection(collectionName, CollectionOptions.empty().capped().size(cappedSizeBytes));
+            } catch (Exception e) {
+                System.out.println("ℹ️ Collection " + collectionName + " déjà créée par un autre nœud: " + e.getMessage());
+            }
+        }
+        collection = mongoTemplate.getCollection(collectionName);
+        ObjectId startAfter = lastEventId();
+
+        running = true;
+        tailer = new Thread(() -> tail(startAfter), "chat-cluster-bus");
+        tailer.setDaemon(true);
+        tailer.start();
+        publisher = new Thread(this::drainOutbox, "chat-cluster-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+        System.out.println("✅ Bus de cluster MongoDB démarré (nœud " + nodeId + ", collection " + collectionName + ")");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+        tailer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public void publish(String topic, Collection<String> userIds, String payload) {
+        Document event = new Document("nodeId", nodeId)
+                .append("topic", topic)
+                .append("userIds", new ArrayList<>(userIds))
+                .append("payload", payload)
+                .append("createdAt", new Date());
+        if (!running || !outbox.offer(event)) {
+            // File pleine ou arrêt en cours : l'appelant insère lui-même plutôt que de perdre l'événement
+            collection.insertOne(event);
+            published.increment();
+        }
+    }
+
+    @Override
+    public void subscribe(String topic, Listener listener) {
+        listeners.computeIfAbsent(topic, key -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private ObjectId lastEventId() {
+        Document last = collection.find().sort(new Document("$natural", -1)).limit(1).first();
+        if (last != null) {
+            return last.getObjectId("_id");
+        }
+        // Un curseur tailable sur une collection capped vide meurt aussitôt : on y dépose un repère
+        Document marker = new Document("nodeId", nodeId).append("topic", "marker").append("createdAt", new Date());
+        collection.insertOne(marker);
+        return marker.getObjectId("_id");
+    }
+
+    // Un insertMany ordonné par lot : l'ordre naturel de la collection reste celui des publications de ce nœud
+    private void drainOutbox() {
+        List<Document> batch = new ArrayList<>(publishBatchSize);
+        while (running || !outbox.isEmpty()) {
+            try {
+                Document first = outbox.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbox.drainTo(batch, publishBatchSize - 1);
+                collection.insertMany(batch, new InsertManyOptions().ordered(true));
+                published.add(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                publishFailed.add(batch.size());
+                System.err.println("❌ Échec de la publication de " + batch.size() + " événements sur le bus : " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void tail(ObjectId startAfter) {
+        ObjectId lastSeen = startAfter;
+        while (running) {
+            try {
+                // Dernier événement vu encore présent : on saute tout ce qui le précède. Sinon la collection capped l'a
+                // évincé avec tous les plus anciens, et tout ce qu'elle contient encore est postérieur
+                boolean skipping = collection.find(Filters.eq("_id", lastSeen)).first() != null;
+                try (MongoCursor<Document> cursor = collection.find()
+                        .sort(new Document("$natural", 1))
+                        .cursorType(CursorType.TailableAwait)
+                        .maxAwaitTime(1, TimeUnit.SECONDS)
+                        .iterator()) {
+                    while (running) {
+                        Document event = cursor.tryNext();
+                        if (event == null) {
+                            if (cursor.getServerCursor() == null) {
+                                break; // Curseur fermé côté serveur : on le rouvre après le dernier événement vu
+                            }
+                            continue;
+                        }
+                        ObjectId eventId = event.getObjectId("_id");
+                        if (skipping) {
+                            skipping = !eventId.equals(lastSeen);
+                            continue;
+                        }
+                        lastSeen = eventId;
+                        if (!nodeId.equals(event.getString("nodeId"))) {
+                            dispatch(event);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    System.err.println("❌ Suivi du bus de cluster interrompu, reprise dans 1s : " + e.getMessage());
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void dispatch(Document event) {
+        List<Listener> topicListeners = listeners.get(event.getString("topic"));
+        if (topicListeners == null) {
+            return;
+        }
+        List<String> userIds = event.getList("userIds", String.class, List.of());
+        String payload = event.getString("payload");
+        for (Listener listener : topicListeners) {
+            try {
+                listener.onMessage(userIds, payload);
+            } catch (Exception e) {
+                System.err.println("❌ Erreur lors du traitement d'un événement du bus : " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.Portbil.portfolio_backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Politique de stockage des notifications (app.notifications) : durée de conservation par type, regroupement
+ * des notifications d'un même type reçues dans une fenêtre de temps en une seule entrée ("X et 12 autres…"),
+ * et paramètres utilisés pour le rendu du texte (NotificationRenderer).
+ */
+@Component
+@ConfigurationProperties(prefix = "app.notifications")
+@Data
+public class NotificationProperties {
+
+    // Conservation des types sans politique propre
+    private Duration defaultRetention = Duration.ofDays(90);
+
+    // Intervalle d'écriture des regroupements accumulés en mémoire
+    private long aggregationFlushIntervalMs = 1000;
+
+    private Map<String, TypePolicy> types = new HashMap<>();
+
+    public TypePolicy policy(String type) {
+        return types.get(type);
+    }
+
+    public Duration retention(String type) {
+        TypePolicy policy = types.get(type);
+        return policy != null && policy.getRetention() != null ? policy.getRetention() : defaultRetention;
+    }
+
+    @Data
+    public static class TypePolicy {
+        // Fenêtre de regroupement ; absente = une notification par événement
+        private Duration aggregationWindow;
+        // Clé de params séparant les regroupements d'un même type (chatId, groupId…)
+        private String groupKey;
+        private Duration retention;
+        // Paramètres passés au motif notification.<type> après le nom de l'auteur ({1}, {2}…)
+        private List<String> textParams = List.of();
+        // Email de l'auteur ajouté aux données envoyées au client (demandes d'amis : liste d'amis côté frontend)
+        private boolean actorEmail;
+    }
+}
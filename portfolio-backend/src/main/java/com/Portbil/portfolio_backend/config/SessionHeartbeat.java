@@ -0,0 +1,180 @@
+package com.Portbil.portfolio_backend.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Détection des connexions à moitié ouvertes sur une roue temporelle hachée.
+ * Chaque trame reçue (texte, pong protocolaire ou "ping" applicatif) ne fait qu'une écriture de l'horodatage
+ * d'activité ; la roue ne traite à chaque tick que son seuil courant : une session active y est reprogrammée
+ * à sa prochaine échéance, une session inactive reçoit un ping, puis est fermée si rien n'arrive avant le délai de pong.
+ */
+@Component
+public class SessionHeartbeat {
+
+    private static final String ENTRY_ATTRIBUTE = "chat.heartbeat";
+    private static final ByteBuffer PING_PAYLOAD = ByteBuffer.wrap(new byte[]{'h', 'b'});
+
+    private final long tickNanos;
+    private final long idleTimeoutNanos;
+    private final long pongTimeoutNanos;
+    private final Queue<Entry>[] wheel;
+    private final int mask;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final LongAdder reaped;
+    private final LongAdder pings;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public SessionHeartbeat(
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.heartbeat.tick-ms:1000}") long tickMs,
+            @Value("${app.chat.heartbeat.wheel-size:64}") int wheelSize,
+            @Value("${app.chat.heartbeat.idle-timeout-ms:30000}") long idleTimeoutMs,
+            @Value("${app.chat.heartbeat.pong-timeout-ms:10000}") long pongTimeoutMs) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.pongTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pongTimeoutMs);
+        // Taille arrondie à la puissance de deux supérieure : le seau d'un tick est tick & mask
+        int slots = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = slots - 1;
+        this.reaped = chatMetrics.counter("chat.sessions.reaped");
+        this.pings = chatMetrics.counter("chat.heartbeat.pings");
+        chatMetrics.gauge("chat.sessions.tracked", tracked::get);
+        chatMetrics.gauge("chat.sessions.idle", idle::get);
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    public void register(BufferedChatSession session) {
+        Entry entry = new Entry(session);
+        session.getDelegate().getAttributes().put(ENTRY_ATTRIBUTE, entry);
+        tracked.incrementAndGet();
+        schedule(entry, idleTimeoutNanos);
+    }
+
+    // Chemin chaud : une écriture volatile, aucun déplacement dans la roue
+    public void touch(WebSocketSession session) {
+        Entry entry = (Entry) session.getAttributes().get(ENTRY_ATTRIBUTE);
+        if (entry != null) {
+            entry.lastActivityNanos = System.nanoTime();
+            if (entry.pinged.get() && entry.pinged.compareAndSet(true, false)) {
+                idle.decrementAndGet();
+            }
+        }
+    }
+
+    // Retrait paresseux : l'entrée est ignorée au prochain passage de son seau
+    public void unregister(WebSocketSession session) {
+        Entry entry = (Entry) session.getAttributes().remove(ENTRY_ATTRIBUTE);
+        if (entry != null && !entry.cancelled) {
+            entry.cancelled = true;
+            tracked.decrementAndGet();
+            if (entry.pinged.compareAndSet(true, false)) {
+                idle.decrementAndGet();
+            }
+        }
+    }
+
+    private void schedule(Entry entry, long delayNanos) {
+        long ticks = Math.max(1, (delayNanos + tickNanos - 1) / tickNanos);
+        entry.deadlineTick = currentTick + ticks;
+        wheel[(int) (entry.deadlineTick & mask)].add(entry);
+    }
+
+    private void tick() {
+        try {
+            long tick = ++currentTick;
+            Queue<Entry> bucket = wheel[(int) (tick & mask)];
+            // Nombre figé : les entrées remises dans ce seau (tour suivant) ne sont pas retraitées dans ce tick
+            for (int remaining = bucket.size(); remaining > 0; remaining--) {
+                Entry entry = bucket.poll();
+                if (entry == null) {
+                    break;
+                }
+                process(entry, tick, bucket);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans la roue de heartbeat : " + e.getMessage());
+        }
+    }
+
+    private void process(Entry entry, long tick, Queue<Entry> bucket) {
+        if (entry.cancelled) {
+            return;
+        }
+        if (!entry.session.isOpen()) {
+            unregister(entry.session.getDelegate());
+            return;
+        }
+        if (entry.deadlineTick > tick) {
+            bucket.add(entry); // Échéance dans un tour ultérieur de la roue
+            return;
+        }
+
+        long idleNanos = System.nanoTime() - entry.lastActivityNanos;
+        if (idleNanos < idleTimeoutNanos) {
+            if (entry.pinged.compareAndSet(true, false)) {
+                idle.decrementAndGet();
+            }
+            schedule(entry, idleTimeoutNanos - idleNanos);
+        } else if (!entry.pinged.get()) {
+            if (entry.pinged.compareAndSet(false, true)) {
+                idle.incrementAndGet();
+            }
+            pings.increment();
+            entry.session.send(new PingMessage(PING_PAYLOAD.duplicate()));
+            schedule(entry, pongTimeoutNanos);
+        } else {
+            reaped.increment();
+            unregister(entry.session.getDelegate());
+            entry.session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Connexion inactive"));
+            System.out.println("💤 Session WebSocket " + entry.session.getDelegate().getId() + " fermée : aucune réponse au ping");
+        }
+    }
+
+    private static final class Entry {
+        private final BufferedChatSession session;
+        private final AtomicBoolean pinged = new AtomicBoolean();
+        private volatile long lastActivityNanos = System.nanoTime();
+        private volatile boolean cancelled;
+        private long deadlineTick; // Écrit à la programmation, lu par le seul thread de la roue
+
+        private Entry(BufferedChatSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.Portbil.portfolio_backend.controller;
 
+import com.Portbil.portfolio_backend.config.ChatMetrics;
 import com.Portbil.portfolio_backend.config.ChatWebSocketHandler;
+import com.Portbil.portfolio_backend.dto.ChatDeltaDTO;
+import com.Portbil.portfolio_backend.dto.ChatSummaryDTO;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
 import com.Portbil.portfolio_backend.entity.Message;
 import com.Portbil.portfolio_backend.entity.User;
 import com.Portbil.portfolio_backend.repository.MessageRepository;
 import com.Portbil.portfolio_backend.repository.UserRepository;
+import com.Portbil.portfolio_backend.service.ChatHistoryService;
+import com.Portbil.portfolio_backend.service.ChatSearchService;
+import com.Portbil.portfolio_backend.service.ChatSummaryService;
+import com.Portbil.portfolio_backend.service.ConversationService;
+import com.Portbil.portfolio_backend.service.PresenceService;
+import com.Portbil.portfolio_backend.service.ReadReceiptService;
+import com.Portbil.portfolio_backend.service.UnreadCounterService;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -29,64 +40,189 @@ public class ChatController {
     @Autowired
     private ChatWebSocketHandler chatWebSocketHandler;
 
-    // Récupérer toutes les conversations d’un utilisateur (privées + groupe)
+    @Autowired
+    private ChatHistoryService chatHistoryService;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ChatSummaryService chatSummaryService;
+
+    @Autowired
+    private ChatSearchService chatSearchService;
+
+    @Autowired
+    private ReadReceiptService readReceiptService;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    // Présence des amis et des participants des conversations de l'utilisateur connecté
+    @GetMapping("/presence")
+    public ResponseEntity<List<OutboundChatFrame.PresenceUpdate>> getPresence(Authentication authentication) {
+        return ResponseEntity.ok(presenceService.getContactsPresence(authentication.getName()));
+    }
+
+    // Accusés d'une conversation (chargement initial) : { delivered: {userId: messageId}, read: {userId: messageId} }
+    @GetMapping("/{chatId}/receipts")
+    public ResponseEntity<Map<String, Map<String, String>>> getReceipts(@PathVariable String chatId, Authentication authentication) {
+        String currentUserId = authentication.getName();
+        User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+        if (!user.getChatIds().contains(chatId)) {
+            return ResponseEntity.status(403).body(null); // Forbidden
+        }
+        return ResponseEntity.ok(readReceiptService.getReceipts(chatId));
+    }
+
+    // Boîte de réception : conversations de l'utilisateur par récence (dernier message, participants, non-lus)
+    // Pagination : ?before=<chatId|ISO>&limit=<n>, before = chatId du dernier élément de la page précédente
+    @GetMapping("/inbox")
+    public ResponseEntity<List<ChatSummaryDTO>> getInbox(
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
+        return ResponseEntity.ok(chatSummaryService.getInbox(authentication.getName(), before, limit));
+    }
+
+    // Nombre de messages non lus par conversation (chatId → compteur), sans parcourir l'historique
+    @GetMapping("/unread")
+    public ResponseEntity<Map<String, Long>> getUnreadCounts(Authentication authentication) {
+        return ResponseEntity.ok(unreadCounterService.getUnreadCounts(authentication.getName()));
+    }
+
+    // Marquer une conversation comme lue jusqu'à upToMessageId (tout, si absent) : remet son compteur à zéro
+    @PostMapping("/{chatId}/read")
+    public ResponseEntity<Void> markChatAsRead(@PathVariable String chatId,
+                                               @RequestParam(required = false) String upToMessageId,
+                                               Authentication authentication) {
+        if (upToMessageId != null && !ObjectId.isValid(upToMessageId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        String currentUserId = authentication.getName();
+        User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+        if (!user.getChatIds().contains(chatId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+        unreadCounterService.markChatAsRead(currentUserId, chatId, upToMessageId);
+        return ResponseEntity.noContent().build();
+    }
+
+    // Récupérer la dernière page de chaque conversation d’un utilisateur (privées + groupe)
     @GetMapping("/all")
-    public ResponseEntity<List<Message>> getAllConversations(Authentication authentication) {
+    public ResponseEntity<List<Message>> getAllConversations(
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         String currentUserId = authentication.getName();
         User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
         List<String> chatIds = user.getChatIds();
-        List<Message> messages = messageRepository.findByChatIdIn(chatIds);
-        System.out.println("📥 Messages fetched for user " + currentUserId + ": " + messages);
+        List<Message> messages = chatHistoryService.getLatestMessages(chatIds, limit);
+        System.out.println("📥 " + messages.size() + " messages fetched for user " + currentUserId + " across " + chatIds.size() + " chats");
         return ResponseEntity.ok(messages);
     }
 
+    // Historique paginé d'une conversation : ?before=<id|ISO>&after=<id|ISO>&limit=<n>
+    @GetMapping("/{chatId}/messages")
+    public ResponseEntity<List<Message>> getChatMessages(
+            @PathVariable String chatId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
+        String currentUserId = authentication.getName();
+        User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+        if (!user.getChatIds().contains(chatId)) {
+            return ResponseEntity.status(403).body(null); // Forbidden
+        }
+        return ResponseEntity.ok(chatHistoryService.getMessages(chatId, before, after, limit));
+    }
+
+    // Synchronisation différentielle : messages de numéro > afterSeq, ?afterSeq=<n>&limit=<n>
+    @GetMapping("/{chatId}/delta")
+    public ResponseEntity<ChatDeltaDTO> getChatDelta(
+            @PathVariable String chatId,
+            @RequestParam(defaultValue = "0") long afterSeq,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
+        String currentUserId = authentication.getName();
+        User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+        if (!user.getChatIds().contains(chatId)) {
+            return ResponseEntity.status(403).body(null); // Forbidden
+        }
+        return ResponseEntity.ok(chatHistoryService.getDelta(chatId, afterSeq, limit));
+    }
+
     // Récupérer les messages privés avec un autre utilisateur ou initialiser une conversation
     @GetMapping("/private/{otherUserId}")
-    public ResponseEntity<List<Message>> getPrivateMessages(@PathVariable String otherUserId, Authentication authentication) {
+    public ResponseEntity<List<Message>> getPrivateMessages(
+            @PathVariable String otherUserId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         String currentUserId = authentication.getName();
-        User currentUser = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
-        User otherUser = userRepository.findById(otherUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
-
-        // Trouver le chatId commun ou en créer un nouveau
-        List<String> commonChatIds = currentUser.getChatIds().stream()
-                .filter(chatId -> otherUser.getChatIds().contains(chatId))
-                .toList();
-
-        String chatId;
-        if (commonChatIds.isEmpty()) {
-            // Générer un nouveau chatId pour une nouvelle conversation
-            chatId = UUID.randomUUID().toString();
-            List<String> currentUserChatIds = new ArrayList<>(currentUser.getChatIds());
-            List<String> otherUserChatIds = new ArrayList<>(otherUser.getChatIds());
-            currentUserChatIds.add(chatId);
-            otherUserChatIds.add(chatId);
-            currentUser.setChatIds(currentUserChatIds);
-            otherUser.setChatIds(otherUserChatIds);
-            userRepository.save(currentUser);
-            userRepository.save(otherUser);
-            System.out.println("🆕 Nouvelle conversation créée avec chatId: " + chatId + " entre " + currentUserId + " et " + otherUserId);
-        } else {
-            chatId = commonChatIds.get(0); // Utiliser le premier chatId commun
-        }
+        // Résolution ponctuelle via le registre des conversations (création si première conversation)
+        String chatId = conversationService.getOrCreatePrivateChatId(currentUserId, otherUserId);
 
-        List<Message> messages = messageRepository.findByChatId(chatId);
-        System.out.println("📥 Private messages fetched between " + currentUserId + " and " + otherUserId + ": " + messages);
+        List<Message> messages = chatHistoryService.getMessages(chatId, before, after, limit);
+        System.out.println("📥 " + messages.size() + " private messages fetched between " + currentUserId + " and " + otherUserId);
         return ResponseEntity.ok(messages);
     }
 
     // Récupérer les messages d’un groupe
     @GetMapping("/group/{groupId}")
-    public ResponseEntity<List<Message>> getGroupMessages(@PathVariable String groupId, Authentication authentication) {
+    public ResponseEntity<List<Message>> getGroupMessages(
+            @PathVariable String groupId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         String currentUserId = authentication.getName();
         User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
         if (!user.getChatIds().contains(groupId)) {
             return ResponseEntity.status(403).body(null); // Forbidden
         }
-        List<Message> messages = messageRepository.findByChatId(groupId);
-        System.out.println("📥 Group messages fetched for group " + groupId + ": " + messages);
+        List<Message> messages = chatHistoryService.getMessages(groupId, before, after, limit);
+        System.out.println("📥 " + messages.size() + " group messages fetched for group " + groupId);
         return ResponseEntity.ok(messages);
     }
 
+    // Recherche plein texte dans les conversations de l'utilisateur : ?q=<texte>&chatId=<optionnel>&limit=<n>
+    @GetMapping("/search")
+    public ResponseEntity<List<Message>> searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) String chatId,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
+        String currentUserId = authentication.getName();
+        User user = userRepository.findById(currentUserId).orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+        List<String> chatIds = user.getChatIds();
+        if (chatId != null) {
+            if (!chatIds.contains(chatId)) {
+                return ResponseEntity.status(403).body(null); // Forbidden
+            }
+            chatIds = List.of(chatId);
+        }
+        return ResponseEntity.ok(chatSearchService.search(chatIds, q, limit));
+    }
+
+    // Reconstruire l'index de recherche depuis MongoDB (réservé aux administrateurs)
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<Map<String, Boolean>> rebuildSearchIndex(Authentication authentication) {
+        boolean isAdmin = authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ADMIN".equals(authority.getAuthority()));
+        if (!isAdmin) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.accepted().body(Map.of("started", chatSearchService.rebuild()));
+    }
+
     // Modifier un message
     @PutMapping("/{id}")
     public ResponseEntity<Message> updateMessage(@PathVariable String id, @RequestBody Message updatedMessage, Authentication authentication) {
@@ -102,9 +238,12 @@ public class ChatController {
             return ResponseEntity.status(403).body(null); // Forbidden
         }
 
+        chatSearchService.remove(existingMessage);
         existingMessage.setContent(updatedMessage.getContent());
         existingMessage.setTimestamp(Instant.now());
         Message savedMessage = messageRepository.save(existingMessage);
+        chatSearchService.index(savedMessage);
+        chatSummaryService.onMessageEdited(savedMessage);
         return ResponseEntity.ok(savedMessage);
     }
 
@@ -124,6 +263,19 @@ public class ChatController {
         }
 
         messageRepository.deleteById(id);
+        chatSummaryService.onMessageDeleted(message);
+        chatSearchService.remove(message);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    // Compteurs et jauges du chat temps réel (réservé aux administrateurs)
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Number>> getMetrics(Authentication authentication) {
+        boolean isAdmin = authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ADMIN".equals(authority.getAuthority()));
+        if (!isAdmin) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(chatMetrics.snapshot());
+    }
+}
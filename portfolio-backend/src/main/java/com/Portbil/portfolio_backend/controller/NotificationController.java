@@ -1,13 +1,19 @@
 package com.Portbil.portfolio_backend.controller;
 
 import com.Portbil.portfolio_backend.dto.NotificationDTO;
+import com.Portbil.portfolio_backend.dto.NotificationIdsDTO;
 import com.Portbil.portfolio_backend.service.NotificationService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -16,33 +22,69 @@ public class NotificationController {
 
     private final NotificationService notificationService;
 
+    // Nombre de notifications non lues de l'utilisateur connecté (badge), sans charger les notifications
+    @GetMapping("/unread-count")
+    public ResponseEntity<Map<String, Long>> getUnreadCount(Authentication authentication) {
+        return ResponseEntity.ok(Map.of("count", notificationService.countUnread(authentication.getName())));
+    }
+
+    // Flux SSE des notifications, alternative au WebSocket de chat ; à la reconnexion, EventSource renvoie
+    // Last-Event-ID et les notifications manquées sont rejouées (lastEventId en paramètre pour une reprise manuelle)
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(required = false) String lastEventId,
+            Authentication authentication) {
+        return notificationService.openStream(authentication.getName(), lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    }
+
+    // Boîte de réception paginée, plus récentes d'abord : ?before=<id|ISO>&limit=<n>&unreadOnly=<bool>
+    // Les textes sont rendus dans la langue de Accept-Language
     @GetMapping("/{userId}")
-    public ResponseEntity<List<NotificationDTO>> getNotifications(@PathVariable String userId, Authentication authentication) {
+    public ResponseEntity<List<NotificationDTO>> getNotifications(
+            @PathVariable String userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean unreadOnly,
+            @RequestHeader(value = "Accept-Language", defaultValue = "en") String lang,
+            Authentication authentication) {
         if (!authentication.getName().equals(userId)) {
             return ResponseEntity.status(403).build();
         }
-        List<NotificationDTO> notifications = notificationService.getNotificationsByUserId(userId);
+        Locale locale = Locale.forLanguageTag(lang);
+        List<NotificationDTO> notifications = notificationService.getNotifications(userId, before, limit, unreadOnly, locale);
         return ResponseEntity.ok(notifications);
     }
 
+    // La propriété est vérifiée dans le filtre de la mise à jour : une seule instruction MongoDB
     @PutMapping("/{notificationId}/read")
     public ResponseEntity<Void> markAsRead(@PathVariable String notificationId, Authentication authentication) {
-        NotificationDTO notification = notificationService.findById(notificationId)
-                .orElseThrow(() -> new IllegalArgumentException("Notification introuvable : " + notificationId));
-        if (!authentication.getName().equals(notification.getUserId())) {
-            return ResponseEntity.status(403).build();
-        }
-        notificationService.markAsRead(notificationId);
+        notificationService.markAsRead(authentication.getName(), notificationId);
         return ResponseEntity.ok().build();
     }
 
+    // Opérations groupées, limitées aux notifications de l'utilisateur connecté ; renvoient le nombre de notifications touchées
+    @PutMapping("/read")
+    public ResponseEntity<Map<String, Long>> markAsRead(@Valid @RequestBody NotificationIdsDTO request, Authentication authentication) {
+        return ResponseEntity.ok(Map.of("updated", notificationService.markAsRead(authentication.getName(), request.getIds())));
+    }
+
+    @PutMapping("/read-all")
+    public ResponseEntity<Map<String, Long>> markAllAsRead(Authentication authentication) {
+        return ResponseEntity.ok(Map.of("updated", notificationService.markAllAsRead(authentication.getName())));
+    }
+
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<Map<String, Long>> deleteNotifications(@Valid @RequestBody NotificationIdsDTO request, Authentication authentication) {
+        return ResponseEntity.ok(Map.of("deleted", notificationService.deleteNotifications(authentication.getName(), request.getIds())));
+    }
+
     @DeleteMapping("/{userId}")
-    public ResponseEntity<Void> deleteAllNotifications(@PathVariable String userId, Authentication authentication) {
+    public ResponseEntity<Map<String, Long>> deleteAllNotifications(@PathVariable String userId, Authentication authentication) {
         if (!authentication.getName().equals(userId)) {
             return ResponseEntity.status(403).build();
         }
-        notificationService.deleteAllNotifications(userId);
-        return ResponseEntity.ok().build();
+        return ResponseEntity.ok(Map.of("deleted", notificationService.deleteAllNotifications(userId)));
     }
 
     // Nouvelle méthode pour supprimer une notification spécifique
@@ -54,12 +96,7 @@ public class NotificationController {
         if (!authentication.getName().equals(userId)) {
             return ResponseEntity.status(403).build();
         }
-        NotificationDTO notification = notificationService.findById(notificationId)
-                .orElseThrow(() -> new IllegalArgumentException("Notification introuvable : " + notificationId));
-        if (!notification.getUserId().equals(userId)) {
-            return ResponseEntity.status(403).build();
-        }
-        notificationService.deleteNotification(notificationId);
+        notificationService.deleteNotification(userId, notificationId);
         return ResponseEntity.ok().build();
     }
 }
\ No newline at end of file
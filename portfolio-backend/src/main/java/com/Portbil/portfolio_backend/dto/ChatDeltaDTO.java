@@ -0,0 +1,16 @@
+package com.Portbil.portfolio_backend.dto;
+
+import com.Portbil.portfolio_backend.entity.Message;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ChatDeltaDTO {
+    private String chatId;
+    private List<Message> messages; // afterSeq < seq <= lastSeq, ordre croissant
+    private long lastSeq; // Tous les numéros jusqu'à lui sont persistés : reprendre après lui, un numéro absent en dessous est un trou définitif
+    private boolean hasMore; // Page pleine : redemander après le dernier seq reçu
+}
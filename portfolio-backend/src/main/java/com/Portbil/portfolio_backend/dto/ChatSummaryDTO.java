@@ -0,0 +1,22 @@
+package com.Portbil.portfolio_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatSummaryDTO {
+    private String chatId;
+    private String type;
+    private List<String> participantIds;
+    private String lastMessageId;
+    private String lastFromUserId;
+    private String lastContent;
+    private Instant lastTimestamp;
+    private long unreadCount;
+}
@@ -0,0 +1,56 @@
+package com.Portbil.portfolio_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * Trames reçues du client WebSocket, décodées directement selon leur champ "type".
+ * Un type inconnu ou absent donne {@link Unknown} plutôt qu'une exception.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", defaultImpl = InboundChatFrame.Unknown.class)
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = InboundChatFrame.PrivateMessage.class, name = "private"),
+        @JsonSubTypes.Type(value = InboundChatFrame.GroupInvite.class, name = "group_invite"),
+        @JsonSubTypes.Type(value = InboundChatFrame.GroupMessage.class, name = "group_message"),
+        @JsonSubTypes.Type(value = InboundChatFrame.Ack.class, name = "ack"),
+        @JsonSubTypes.Type(value = InboundChatFrame.Read.class, name = "read"),
+        @JsonSubTypes.Type(value = InboundChatFrame.Typing.class, name = "typing"),
+        @JsonSubTypes.Type(value = InboundChatFrame.Sync.class, name = "sync"),
+        @JsonSubTypes.Type(value = InboundChatFrame.Ping.class, name = "ping")
+})
+@JsonIgnoreProperties(ignoreUnknown = true)
+public sealed interface InboundChatFrame {
+
+    record PrivateMessage(String toUserId, String content) implements InboundChatFrame {
+    }
+
+    record GroupInvite(String invitedUserId, String groupId) implements InboundChatFrame {
+    }
+
+    record GroupMessage(String groupId, String content) implements InboundChatFrame {
+    }
+
+    // Dernier message reçu dans une conversation : fait avancer le curseur de livraison
+    record Ack(String chatId, String messageId) implements InboundChatFrame {
+    }
+
+    // Conversation lue jusqu'à ce message inclus (vaut aussi accusé de réception)
+    record Read(String chatId, String messageId) implements InboundChatFrame {
+    }
+
+    // Début (typing = true) ou fin de saisie dans une conversation ; à renvoyer périodiquement tant que l'utilisateur écrit
+    record Typing(String chatId, boolean typing) implements InboundChatFrame {
+    }
+
+    // Demande de rejeu des messages manqués depuis les curseurs de livraison, envoyée après "connected"
+    record Sync() implements InboundChatFrame {
+    }
+
+    // Heartbeat applicatif pour les clients qui ne voient pas les pings protocolaires
+    record Ping() implements InboundChatFrame {
+    }
+
+    record Unknown() implements InboundChatFrame {
+    }
+}
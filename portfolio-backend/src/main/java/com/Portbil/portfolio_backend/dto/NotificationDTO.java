@@ -18,4 +18,6 @@ public class NotificationDTO {
     private Instant timestamp;
     private Boolean isRead;
     private Map<String, String> data;
+    private Integer count; // Nombre d'événements regroupés, absent pour une notification simple
+    private Integer actorCount;
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.Portbil.portfolio_backend.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class NotificationIdsDTO {
+    @NotEmpty(message = "ids est requis")
+    @Size(max = 500, message = "500 notifications au plus par requête")
+    private List<String> ids;
+}
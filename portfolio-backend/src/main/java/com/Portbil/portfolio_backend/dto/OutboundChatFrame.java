@@ -0,0 +1,152 @@
+package com.Portbil.portfolio_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import com.Portbil.portfolio_backend.entity.Message;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trames envoyées aux clients WebSocket. Le champ "type" est écrit à partir du nom de chaque sous-type,
+ * le format JSON reste celui attendu par le frontend.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+public sealed interface OutboundChatFrame {
+
+    @JsonTypeName("connected")
+    record Connected(String userId) implements OutboundChatFrame {
+    }
+
+    @JsonTypeName("pong")
+    record Pong() implements OutboundChatFrame {
+    }
+
+    // Trame refusée par la limitation de débit ; "error" reste lisible par les clients existants
+    @JsonTypeName("rate_limited")
+    record RateLimited(String error, String budget, long retryAfterMs) implements OutboundChatFrame {
+    }
+
+    @JsonTypeName("private")
+    record PrivateMessage(String id, String fromUserId, String toUserId, String chatId, String content,
+                          Instant timestamp, long seq) implements OutboundChatFrame {
+    }
+
+    // Accusé d'envoi à l'émetteur quand le destinataire n'est pas connecté à ce nœud
+    @JsonTypeName("message_sent")
+    record MessageSent(String id, String toUserId, String chatId, String content,
+                       Instant timestamp, long seq) implements OutboundChatFrame {
+    }
+
+    @JsonTypeName("group_message")
+    record GroupMessage(String id, String fromUserId, String groupId, String chatId, String content,
+                        Instant timestamp, long seq) implements OutboundChatFrame {
+    }
+
+    @JsonTypeName("group_invite")
+    record GroupInvite(String fromUserId, String invitedUserId, String groupId,
+                       Instant timestamp) implements OutboundChatFrame {
+    }
+
+    @JsonTypeName("invite_sent")
+    record InviteSent(String groupId, String invitedUserId) implements OutboundChatFrame {
+    }
+
+    // Lot de messages manqués d'une conversation, dans l'ordre chronologique
+    @JsonTypeName("replay")
+    record Replay(String chatId, List<ReplayedMessage> messages) implements OutboundChatFrame {
+    }
+
+    // Fin du rejeu ; les conversations tronquées sont à compléter par l'API REST
+    @JsonTypeName("sync_complete")
+    record SyncComplete(int messages, List<String> truncatedChatIds) implements OutboundChatFrame {
+    }
+
+    // Nouveau nombre de messages non lus d'une conversation
+    @JsonTypeName("unread")
+    record Unread(String chatId, long count) implements OutboundChatFrame {
+    }
+
+    // Changements de présence regroupés ; à la connexion, état des contacts déjà en ligne
+    @JsonTypeName("presence")
+    record Presence(List<PresenceUpdate> updates) implements OutboundChatFrame {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record PresenceUpdate(String userId, String status, Instant since) {
+    }
+
+    // Liste complète des participants en train d'écrire dans la conversation (vide = plus personne)
+    @JsonTypeName("typing")
+    record Typing(String chatId, List<String> userIds) implements OutboundChatFrame {
+    }
+
+    // Accusés regroupés d'une conversation depuis le dernier flush : kind = "delivered" ou "read"
+    @JsonTypeName("receipts")
+    record Receipts(String chatId, List<Receipt> receipts) implements OutboundChatFrame {
+    }
+
+    record Receipt(String userId, String kind, String messageId) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ReplayedMessage(String id, String type, String fromUserId, String toUserId, String groupId, String chatId,
+                           String content, Instant timestamp, Long seq) {
+
+        public static ReplayedMessage from(Message message) {
+            return new ReplayedMessage(message.getId(), message.getType(), message.getFromUserId(), message.getToUserId(),
+                    message.getGroupId(), message.getChatId(), message.getContent(), message.getTimestamp(), message.getSeq());
+        }
+    }
+
+    // Les données additionnelles sont aplaties au premier niveau, comme le lit le frontend
+    @JsonTypeName("notification")
+    @JsonPropertyOrder({"id", "notificationType", "message", "timestamp"})
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    final class Notification implements OutboundChatFrame {
+
+        private final String id; // Id de la notification persistée, absent d'une trame partagée par plusieurs destinataires
+        private final String notificationType;
+        private final String message;
+        private final Instant timestamp;
+        private final Map<String, String> data;
+
+        public Notification(String notificationType, String message, Instant timestamp, Map<String, String> data) {
+            this(null, notificationType, message, timestamp, data);
+        }
+
+        public Notification(String id, String notificationType, String message, Instant timestamp, Map<String, String> data) {
+            this.id = id;
+            this.notificationType = notificationType;
+            this.message = message;
+            this.timestamp = timestamp;
+            this.data = data != null ? data : Map.of();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getNotificationType() {
+            return notificationType;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @JsonAnyGetter
+        public Map<String, String> data() {
+            return data;
+        }
+    }
+}
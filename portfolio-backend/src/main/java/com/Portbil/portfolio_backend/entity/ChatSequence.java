@@ -0,0 +1,21 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "chat_sequences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSequence {
+    @Id
+    private String id; // chatId
+
+    // Dernier numéro attribué, jamais réattribué
+    private long seq;
+
+    // Marque contiguë : tous les numéros jusqu'à lui sont insérés dans messages ou abandonnés (0 = aucun)
+    private long persistedSeq;
+}
@@ -0,0 +1,29 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Document(collection = "chat_summaries")
+// Index de la boîte de réception : conversations d'un participant, des plus récentes aux plus anciennes
+@CompoundIndex(name = "participant_recency_idx", def = "{'participantIds': 1, 'lastTimestamp': -1, '_id': -1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSummary {
+    @Id
+    private String id; // chatId
+    private String type; // "private" ou "group_message"
+    @Builder.Default
+    private List<String> participantIds = new ArrayList<>();
+    private String lastMessageId;
+    private String lastFromUserId;
+    private String lastContent;
+    private Instant lastTimestamp;
+}
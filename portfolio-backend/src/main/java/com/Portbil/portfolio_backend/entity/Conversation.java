@@ -0,0 +1,26 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+@Document(collection = "conversations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Conversation {
+    @Id
+    private String id; // chatId de la conversation privée
+
+    // Clé canonique "minUserId:maxUserId" : une seule conversation privée par paire d'utilisateurs
+    @Indexed(unique = true)
+    private String pairKey;
+
+    private List<String> participantIds;
+    private Instant createdAt;
+}
@@ -0,0 +1,29 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "delivery_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeliveryCursor {
+    @Id
+    private String id; // "userId:chatId"
+
+    @Indexed
+    private String userId;
+
+    @Indexed
+    private String chatId;
+
+    // Dernier message acquitté par le client dans cette conversation (id ObjectId hexadécimal, croissant)
+    private String lastMessageId;
+
+    private Instant updatedAt;
+}
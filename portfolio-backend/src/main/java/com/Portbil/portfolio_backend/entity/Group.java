@@ -0,0 +1,24 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+@Document(collection = "groups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Group {
+    @Id
+    private String id; // Identique au chatId des messages du groupe
+    private String ownerId;
+    @Builder.Default
+    private Set<String> memberIds = new HashSet<>();
+    private Instant createdAt;
+    private Instant updatedAt;
+}
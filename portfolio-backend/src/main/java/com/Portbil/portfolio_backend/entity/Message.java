@@ -2,11 +2,20 @@ package com.Portbil.portfolio_backend.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
 @Document(collection = "messages")
+// Index de pagination : une page d'historique = une lecture bornée sur (chatId, timestamp), _id départage les ex-aequo
+@CompoundIndex(name = "chat_timestamp_idx", def = "{'chatId': 1, 'timestamp': 1, '_id': 1}")
+// Synchronisation différentielle : un numéro par conversation ; les messages antérieurs aux séquences n'en ont pas
+@CompoundIndex(name = "chat_seq_idx", def = "{'chatId': 1, 'seq': 1}", unique = true, partialFilter = "{'seq': {'$exists': true}}")
+// Archivage : conversations ayant des messages plus anciens que le palier chaud, sans parcourir toute la collection
+@CompoundIndex(name = "timestamp_chat_idx", def = "{'timestamp': 1, 'chatId': 1}")
+// Rattachement d'une paire antérieure au registre des conversations : premier message privé de l'expéditeur au destinataire
+@CompoundIndex(name = "type_from_to_idx", def = "{'type': 1, 'fromUserId': 1, 'toUserId': 1}")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -23,4 +32,5 @@ public class Message {
     private String chatId; // Nouveau champ pour lier à une conversation
     private String content;
     private Instant timestamp;
+    private Long seq; // Numéro dans la conversation (ChatSequenceService), null pour les anciens messages
 }
\ No newline at end of file
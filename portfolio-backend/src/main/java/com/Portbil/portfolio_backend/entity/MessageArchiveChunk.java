@@ -0,0 +1,28 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "message_archive")
+// Les tranches d'une conversation ne se chevauchent pas : (chatId, firstTimestamp) suffit à les parcourir dans l'ordre
+@CompoundIndex(name = "chat_first_timestamp_idx", def = "{'chatId': 1, 'firstTimestamp': 1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageArchiveChunk {
+    @Id
+    private String id; // "chatId:firstMessageId" : réarchiver la même tranche écrase le même document
+    private String chatId;
+    private Instant firstTimestamp;
+    private Instant lastTimestamp;
+    private String firstMessageId;
+    private String lastMessageId;
+    private int count;
+    private byte[] payload; // Messages de la tranche en JSON compressé GZIP, ordre chronologique
+    private Instant archivedAt;
+}
@@ -2,12 +2,18 @@ package com.Portbil.portfolio_backend.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 @Document(collection = "notifications")
+// Boîte de réception : page = lecture bornée sur (userId, isRead, timestamp), les deux états fusionnés par l'index ;
+// le nombre de non-lues est un comptage couvert sur le préfixe (userId, isRead)
+@CompoundIndex(name = "user_read_timestamp_idx", def = "{'userId': 1, 'isRead': 1, 'timestamp': -1, '_id': -1}")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -17,11 +23,26 @@ public class Notification {
     private String id;
     private String userId;
     private String type;
-    private String message;
+    // Auteur de l'événement et paramètres (ids) : le texte et le profil de l'auteur sont rendus à la lecture
+    private String actorId;
+    private Map<String, String> params;
     private Instant timestamp;
     private boolean isRead;
+    // Dernière lecture : un événement regroupé antérieur ne rend pas l'entrée de nouveau non lue
+    private Instant readAt;
+
+    // Texte et données figés des notifications enregistrées avant le rendu différé (lecture seule)
+    private String message;
     private Map<String, String> data;
 
+    // Regroupement (NotificationProperties) : nombre d'événements et auteurs distincts réunis dans cette entrée
+    private Integer count;
+    private List<String> actorIds;
+
+    // Suppression par l'index TTL à cette date, selon la conservation du type
+    @Indexed(name = "expires_at_ttl_idx", expireAfter = "0s")
+    private Instant expiresAt;
+
     // Setter explicite pour isRead (temporaire)
     public void setIsRead(boolean isRead) {
         this.isRead = isRead;
@@ -0,0 +1,28 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "read_watermarks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReadWatermark {
+    @Id
+    private String id; // "userId:chatId"
+
+    private String userId;
+
+    @Indexed
+    private String chatId;
+
+    // L'utilisateur a lu la conversation jusqu'à ce message inclus
+    private String lastReadMessageId;
+
+    private Instant updatedAt;
+}
@@ -0,0 +1,29 @@
+package com.Portbil.portfolio_backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "unread_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UnreadCounter {
+    @Id
+    private String id; // "userId:chatId"
+
+    @Indexed
+    private String userId;
+
+    private String chatId;
+
+    private long count;
+
+    private String readUpTo; // Id du dernier message lu : les messages jusqu'à lui ne sont plus comptés
+
+    private Instant updatedAt;
+}
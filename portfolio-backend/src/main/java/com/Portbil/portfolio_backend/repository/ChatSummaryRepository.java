@@ -0,0 +1,22 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.ChatSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ChatSummaryRepository extends MongoRepository<ChatSummary, String> {
+
+    // Pagination par récence sur l'index (participantIds, lastTimestamp, _id) : tri et taille via le Pageable
+    @Query("{ 'participantIds': ?0 }")
+    List<ChatSummary> findPageByParticipant(String userId, Pageable pageable);
+
+    @Query("{ 'participantIds': ?0, '$or': [ { 'lastTimestamp': { $lt: ?1 } }, { 'lastTimestamp': ?1, '_id': { $lt: ?2 } } ] }")
+    List<ChatSummary> findPageByParticipantBefore(String userId, Instant lastTimestamp, String chatId, Pageable pageable);
+
+    @Query("{ 'participantIds': ?0, 'lastTimestamp': { $lt: ?1 } }")
+    List<ChatSummary> findPageByParticipantBeforeTimestamp(String userId, Instant lastTimestamp, Pageable pageable);
+}
@@ -0,0 +1,10 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.Conversation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface ConversationRepository extends MongoRepository<Conversation, String> {
+    Optional<Conversation> findByPairKey(String pairKey);
+}
@@ -0,0 +1,13 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.DeliveryCursor;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface DeliveryCursorRepository extends MongoRepository<DeliveryCursor, String> {
+
+    List<DeliveryCursor> findByUserId(String userId);
+
+    List<DeliveryCursor> findByChatId(String chatId);
+}
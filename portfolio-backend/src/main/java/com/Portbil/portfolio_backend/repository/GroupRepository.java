@@ -0,0 +1,7 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.Group;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface GroupRepository extends MongoRepository<Group, String> {
+}
@@ -1,16 +1,25 @@
 package com.Portbil.portfolio_backend.repository;
 
 import com.Portbil.portfolio_backend.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface MessageRepository extends MongoRepository<Message, String> {
 
     // Récupérer l'historique des messages privés entre deux utilisateurs
     List<Message> findByTypeAndFromUserIdAndToUserId(String type, String fromUserId, String toUserId);
 
+    // Premier message privé d'une paire, pour rattacher au registre une conversation qui lui est antérieure
+    Optional<Message> findFirstByTypeAndFromUserIdAndToUserId(String type, String fromUserId, String toUserId);
+
+    // Conversation antérieure au registre : ses messages disent si elle est privée (index (chatId, timestamp, _id))
+    boolean existsByChatIdAndType(String chatId, String type);
+
     // Récupérer l'historique des messages d'un groupe
     List<Message> findByTypeAndGroupId(String type, String groupId);
 
@@ -24,4 +33,28 @@ public interface MessageRepository extends MongoRepository<Message, String> {
 
     @Query("{ 'chatId': { $in: ?0 } }")
     List<Message> findByChatIdIn(List<String> chatIds);
-}
\ No newline at end of file
+
+    // Pagination par curseur sur l'index (chatId, timestamp, _id) : le tri et la taille viennent du Pageable
+    @Query("{ 'chatId': ?0 }")
+    List<Message> findPageByChatId(String chatId, Pageable pageable);
+
+    @Query("{ 'chatId': ?0, 'timestamp': { $lt: ?1 } }")
+    List<Message> findPageBeforeTimestamp(String chatId, Instant timestamp, Pageable pageable);
+
+    @Query("{ 'chatId': ?0, 'timestamp': { $gt: ?1 } }")
+    List<Message> findPageAfterTimestamp(String chatId, Instant timestamp, Pageable pageable);
+
+    @Query("{ 'chatId': ?0, '$or': [ { 'timestamp': { $lt: ?1 } }, { 'timestamp': ?1, '_id': { $lt: ?2 } } ] }")
+    List<Message> findPageBeforeMessage(String chatId, Instant timestamp, String messageId, Pageable pageable);
+
+    @Query("{ 'chatId': ?0, '$or': [ { 'timestamp': { $gt: ?1 } }, { 'timestamp': ?1, '_id': { $gt: ?2 } } ] }")
+    List<Message> findPageAfterMessage(String chatId, Instant timestamp, String messageId, Pageable pageable);
+
+    // Synchronisation différentielle sur l'index (chatId, seq)
+    @Query("{ 'chatId': ?0, 'seq': { $gt: ?1, $lte: ?2 } }")
+    List<Message> findPageBetweenSeq(String chatId, long afterSeq, long upToSeq, Pageable pageable);
+
+    // Parcours de la marque de persistance contiguë : numéros et horodatages seulement
+    @Query(value = "{ 'chatId': ?0, 'seq': { $gt: ?1 } }", fields = "{ 'seq': 1, 'timestamp': 1 }")
+    List<Message> findSeqsAfter(String chatId, long seq, Pageable pageable);
+}
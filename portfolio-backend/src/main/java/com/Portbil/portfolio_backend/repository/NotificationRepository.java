@@ -1,11 +1,32 @@
 package com.Portbil.portfolio_backend.repository;
 
 import com.Portbil.portfolio_backend.entity.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface NotificationRepository extends MongoRepository<Notification, String> {
     List<Notification> findByUserId(String userId);
     void deleteByUserId(String userId); // Ajout de cette méthode (à implémenter via MongoDB)
+
+    // Pagination par curseur sur l'index (userId, isRead, timestamp, _id) ; readStates = [false] ou [false, true]
+    @Query("{ 'userId': ?0, 'isRead': { $in: ?1 } }")
+    List<Notification> findPageByUserId(String userId, List<Boolean> readStates, Pageable pageable);
+
+    @Query("{ 'userId': ?0, 'isRead': { $in: ?1 }, 'timestamp': { $lt: ?2 } }")
+    List<Notification> findPageBeforeTimestamp(String userId, List<Boolean> readStates, Instant timestamp, Pageable pageable);
+
+    @Query("{ 'userId': ?0, 'isRead': { $in: ?1 }, '$or': [ { 'timestamp': { $lt: ?2 } }, { 'timestamp': ?2, '_id': { $lt: ?3 } } ] }")
+    List<Notification> findPageBeforeNotification(String userId, List<Boolean> readStates, Instant timestamp, String notificationId, Pageable pageable);
+
+    // Rejeu d'un flux SSE (Last-Event-ID) : notifications créées ou regroupées après l'instant donné
+    @Query("{ 'userId': ?0, 'isRead': { $in: ?1 }, 'timestamp': { $gt: ?2 } }")
+    List<Notification> findPageAfterTimestamp(String userId, List<Boolean> readStates, Instant timestamp, Pageable pageable);
+
+    // Comptage couvert par l'index : aucun document n'est lu
+    @Query(value = "{ 'userId': ?0, 'isRead': false }", count = true)
+    long countUnreadByUserId(String userId);
 }
\ No newline at end of file
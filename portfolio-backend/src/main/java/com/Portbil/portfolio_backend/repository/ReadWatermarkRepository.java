@@ -0,0 +1,11 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.ReadWatermark;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ReadWatermarkRepository extends MongoRepository<ReadWatermark, String> {
+
+    List<ReadWatermark> findByChatId(String chatId);
+}
@@ -0,0 +1,14 @@
+package com.Portbil.portfolio_backend.repository;
+
+import com.Portbil.portfolio_backend.entity.UnreadCounter;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
+
+public interface UnreadCounterRepository extends MongoRepository<UnreadCounter, String> {
+
+    // Seules les conversations avec des messages non lus
+    @Query("{ 'userId': ?0, 'count': { $gt: 0 } }")
+    List<UnreadCounter> findUnreadByUserId(String userId);
+}
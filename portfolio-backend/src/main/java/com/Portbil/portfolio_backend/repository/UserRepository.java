@@ -2,7 +2,10 @@ package com.Portbil.portfolio_backend.repository;
 
 import com.Portbil.portfolio_backend.entity.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +19,16 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     // Ajout pour récupérer plusieurs utilisateurs par leurs IDs
     List<User> findByIdIn(List<String> ids);
+
+    // Profils d'auteurs de notifications : seuls les champs affichés sont lus
+    @Query(value = "{ '_id' : { '$in' : ?0 } }", fields = "{ 'firstName' : 1, 'lastName' : 1, 'email' : 1, 'profilePictureUrl' : 1 }")
+    List<User> findProfilesByIdIn(Collection<String> ids);
+
+    // Ajout atomique d'un chatId sans recharger ni réécrire le document utilisateur
+    @Update("{ '$addToSet' : { 'chatIds' : ?1 } }")
+    long findAndAddChatIdById(String id, String chatId);
+
+    // Utilisateurs ayant un chatId donné (ids uniquement), pour les groupes créés avant la collection groups
+    @Query(value = "{ 'chatIds' : ?0 }", fields = "{ '_id' : 1 }")
+    List<User> findIdsByChatId(String chatId);
 }
\ No newline at end of file
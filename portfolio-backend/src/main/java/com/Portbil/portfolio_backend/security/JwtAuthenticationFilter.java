@@ -57,6 +57,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             }
         }
 
+        // EventSource ne permet pas d'en-tête Authorization : le flux SSE des notifications accepte aussi ?token=
+        if (token == null && request.getRequestURI().equals("/api/notifications/stream")) {
+            token = request.getParameter("token");
+            if (token != null) {
+                try {
+                    userId = jwtUtil.extractUserId(token);
+                } catch (Exception e) {
+                    System.out.println("🔴 Erreur lors de l'extraction de l'utilisateur depuis l’URL: " + e.getMessage());
+                }
+            }
+        }
+
         // Authentifier si un userId est extrait
         if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             System.out.println("🔹 Extraction de l'ID utilisateur depuis le token : " + userId);
@@ -0,0 +1,59 @@
+package com.Portbil.portfolio_backend.security;
+
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Authentifie la connexion WebSocket une seule fois, au handshake : le JWT (en-tête Authorization ou paramètre token)
+ * est vérifié et l'userId ainsi que l'expiration sont rangés dans les attributs de session.
+ * Le handler lit ensuite ces attributs à chaque trame sans refaire de vérification cryptographique.
+ */
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String USER_ID_ATTRIBUTE = "chat.userId";
+    public static final String TOKEN_EXPIRATION_ATTRIBUTE = "chat.tokenExpiresAt";
+
+    private final JwtUtil jwtUtil;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = resolveToken(request);
+        if (token != null) {
+            try {
+                Claims claims = jwtUtil.extractAllClaims(token);
+                attributes.put(USER_ID_ATTRIBUTE, claims.getSubject());
+                if (claims.getExpiration() != null) {
+                    attributes.put(TOKEN_EXPIRATION_ATTRIBUTE, claims.getExpiration().toInstant());
+                }
+            } catch (Exception e) {
+                System.out.println("🔴 Token WebSocket invalide: " + e.getMessage());
+            }
+        }
+        // Handshake toujours accepté : sans userId, le handler envoie l'erreur d'authentification puis ferme
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String resolveToken(ServerHttpRequest request) {
+        String authHeader = request.getHeaders().getFirst("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        return UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+    }
+}
@@ -0,0 +1,128 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.dto.ChatDeltaDTO;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lecture paginée de l'historique d'une conversation.
+ * Les curseurs {@code before} / {@code after} acceptent un id de message ou un timestamp ISO-8601 ;
+ * chaque page est une lecture bornée sur l'index (chatId, timestamp, _id) et est renvoyée dans l'ordre chronologique.
+ * Une page qui dépasse le palier chaud est complétée par les tranches archivées ({@link MessageArchiveService}).
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatHistoryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "timestamp").and(Sort.by(Sort.Direction.DESC, "id"));
+    private static final Sort OLDEST_FIRST = Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "id"));
+    private static final Sort SEQ_ASC = Sort.by(Sort.Direction.ASC, "seq");
+
+    private final MessageRepository messageRepository;
+    private final MessageArchiveService messageArchiveService;
+    private final ChatSequenceService chatSequenceService;
+
+    public List<Message> getMessages(String chatId, String before, String after, Integer limit) {
+        int size = pageSize(limit);
+
+        if (after != null && !after.isBlank()) {
+            Cursor cursor = resolveCursor(chatId, after);
+            // L'archive précède le palier chaud : on la lit d'abord, puis on complète avec les messages chauds
+            List<Message> page = new ArrayList<>(messageArchiveService.readAfter(chatId, cursor.timestamp(), cursor.messageId(), size));
+            if (page.size() < size) {
+                Pageable pageable = PageRequest.of(0, size - page.size(), OLDEST_FIRST);
+                page.addAll(cursor.messageId() != null
+                        ? messageRepository.findPageAfterMessage(chatId, cursor.timestamp(), cursor.messageId(), pageable)
+                        : messageRepository.findPageAfterTimestamp(chatId, cursor.timestamp(), pageable));
+            }
+            return page;
+        }
+
+        Pageable pageable = PageRequest.of(0, size, NEWEST_FIRST);
+        List<Message> page;
+        Cursor cursor = null;
+        if (before != null && !before.isBlank()) {
+            cursor = resolveCursor(chatId, before);
+            page = cursor.messageId() != null
+                    ? messageRepository.findPageBeforeMessage(chatId, cursor.timestamp(), cursor.messageId(), pageable)
+                    : messageRepository.findPageBeforeTimestamp(chatId, cursor.timestamp(), pageable);
+        } else {
+            page = messageRepository.findPageByChatId(chatId, pageable);
+        }
+
+        List<Message> chronological = new ArrayList<>(page);
+        if (page.size() < size) {
+            // Palier chaud épuisé : la suite vient de l'archive, avant le plus ancien message lu (ou le curseur)
+            Message oldest = page.isEmpty() ? null : page.get(page.size() - 1);
+            Instant fromTimestamp = oldest != null ? oldest.getTimestamp() : cursor != null ? cursor.timestamp() : null;
+            String fromMessageId = oldest != null ? oldest.getId() : cursor != null ? cursor.messageId() : null;
+            chronological.addAll(messageArchiveService.readBefore(chatId, fromTimestamp, fromMessageId, size - page.size()));
+        }
+
+        // Lu du plus récent au plus ancien, renvoyé dans l'ordre chronologique
+        Collections.reverse(chronological);
+        return chronological;
+    }
+
+    // Tout après le numéro afterSeq, sur l'index (chatId, seq). Limité au palier chaud : un saut entre afterSeq et
+    // le premier numéro renvoyé (messages archivés ou supprimés) se comble par GET /{chatId}/messages?after=
+    public ChatDeltaDTO getDelta(String chatId, long afterSeq, Integer limit) {
+        int size = pageSize(limit);
+        // Marque contiguë : tout numéro jusqu'à lastSeq est persisté et la page s'arrête à elle ; un message au-dessus
+        // (inséré, ou en vol sur ce nœud ou un autre) sera dans un delta suivant
+        long lastSeq = chatSequenceService.current(chatId);
+        List<Message> messages = afterSeq >= lastSeq ? List.of()
+                : messageRepository.findPageBetweenSeq(chatId, afterSeq, lastSeq, PageRequest.of(0, size, SEQ_ASC));
+        return ChatDeltaDTO.builder()
+                .chatId(chatId)
+                .messages(messages)
+                .lastSeq(lastSeq)
+                .hasMore(messages.size() == size)
+                .build();
+    }
+
+    // Dernière page de chaque conversation (une lecture bornée par chatId)
+    public List<Message> getLatestMessages(List<String> chatIds, Integer limitPerChat) {
+        List<Message> messages = new ArrayList<>();
+        for (String chatId : chatIds) {
+            messages.addAll(getMessages(chatId, null, null, limitPerChat));
+        }
+        return messages;
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private Cursor resolveCursor(String chatId, String cursor) {
+        try {
+            return new Cursor(Instant.parse(cursor), null);
+        } catch (DateTimeParseException e) {
+            Message message = messageRepository.findById(cursor)
+                    .filter(m -> chatId.equals(m.getChatId()))
+                    .or(() -> messageArchiveService.findMessage(chatId, cursor))
+                    .orElseThrow(() -> new IllegalArgumentException("Curseur de pagination invalide : " + cursor));
+            return new Cursor(message.getTimestamp(), message.getId());
+        }
+    }
+
+    private record Cursor(Instant timestamp, String messageId) {
+    }
+}
@@ -0,0 +1,284 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.entity.Notification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Persistance différée (write-behind) des messages et notifications du chat.
+ * Les appelants assignent les ids eux-mêmes et délivrent immédiatement ; les documents sont insérés
+ * dans MongoDB par lots depuis un thread dédié, dès que le lot est plein ou que l'intervalle de flush expire.
+ * Si une file est pleine, l'appelant persiste lui-même (pas de perte) ; à l'arrêt, les files sont vidées.
+ * Un document refusé par MongoDB est retenté avec un délai croissant (app.chat.persistence.max-retries fois), puis
+ * versé dans la collection chat_dead_letters pour reprise manuelle : aucun document n'est abandonné en silence.
+ * Chaque lot de messages effectivement inséré est ensuite transmis aux {@link MessagePersistListener}.
+ */
+@Service
+public class ChatPersistenceBuffer {
+
+    private static final String DEAD_LETTER_COLLECTION = "chat_dead_letters";
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatMetrics chatMetrics;
+    private final int maxRetries;
+    private final long retryDelayMs;
+    private final ObjectProvider<MessagePersistListener> messagePersistListeners;
+    private final WriteBehindQueue<Message> messages;
+    private final WriteBehindQueue<Notification> notifications;
+
+    public ChatPersistenceBuffer(
+            MongoTemplate mongoTemplate,
+            ChatMetrics chatMetrics,
+            ObjectProvider<MessagePersistListener> messagePersistListeners,
+            @Value("${app.chat.persistence.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.chat.persistence.batch-size:500}") int batchSize,
+            @Value("${app.chat.persistence.flush-interval-ms:50}") long flushIntervalMs,
+            @Value("${app.chat.persistence.max-retries:5}") int maxRetries,
+            @Value("${app.chat.persistence.retry-delay-ms:1000}") long retryDelayMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.chatMetrics = chatMetrics;
+        this.maxRetries = maxRetries;
+        this.retryDelayMs = retryDelayMs;
+        this.messagePersistListeners = messagePersistListeners;
+        this.messages = new WriteBehindQueue<>("messages", Message.class, queueCapacity, batchSize, flushIntervalMs,
+                this::notifyMessagesPersisted);
+        this.notifications = new WriteBehindQueue<>("notifications", Notification.class, queueCapacity, batchSize, flushIntervalMs,
+                persisted -> { });
+    }
+
+    @PostConstruct
+    public void start() {
+        messages.start();
+        notifications.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        messages.stop();
+        notifications.stop();
+    }
+
+    public void enqueue(Message message) {
+        messages.enqueue(message);
+    }
+
+    public void enqueue(Notification notification) {
+        notifications.enqueue(notification);
+    }
+
+    private void notifyMessagesPersisted(List<Message> persisted) {
+        messagePersistListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onMessagesPersisted(persisted);
+            } catch (Exception e) {
+                System.err.println("❌ Erreur dans " + listener.getClass().getSimpleName() + " après l'insertion de "
+                        + persisted.size() + " messages : " + e.getMessage());
+            }
+        });
+    }
+
+    private final class WriteBehindQueue<T> {
+
+        private final String name;
+        private final Class<T> entityClass;
+        private final BlockingQueue<T> queue;
+        private final int batchSize;
+        private final long flushIntervalNanos;
+        private final Consumer<List<T>> afterFlush;
+        // Documents refusés en attente d'un nouvel essai, repris par le thread dédié à leur échéance
+        private final Queue<Retry<T>> retries = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingRetries = new AtomicInteger();
+        private final LongAdder failed;
+        private final LongAdder retried;
+        private final LongAdder deadLettered;
+        private volatile boolean running;
+        private Thread worker;
+
+        private WriteBehindQueue(String name, Class<T> entityClass, int capacity, int batchSize, long flushIntervalMs,
+                                 Consumer<List<T>> afterFlush) {
+            this.name = name;
+            this.entityClass = entityClass;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.batchSize = batchSize;
+            this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+            this.afterFlush = afterFlush;
+            this.failed = chatMetrics.counter("chat.persistence.failed." + name);
+            this.retried = chatMetrics.counter("chat.persistence.retried." + name);
+            this.deadLettered = chatMetrics.counter("chat.persistence.dead_lettered." + name);
+            chatMetrics.gauge("chat.persistence.retry_pending." + name, pendingRetries::get);
+        }
+
+        private void start() {
+            running = true;
+            worker = new Thread(this::run, "chat-write-behind-" + name);
+            worker.start();
+        }
+
+        private void enqueue(T item) {
+            if (!running || !queue.offer(item)) {
+                // File pleine ou arrêt en cours : l'appelant écrit lui-même plutôt que de perdre le document
+                scheduleRetries(flush(List.of(item)), 0);
+            }
+        }
+
+        private void run() {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    retryDue(false);
+                    T first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0) {
+                            break;
+                        }
+                        T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    scheduleRetries(flush(batch), 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        // Renvoie les documents que ni l'insertion groupée ni le repli document par document n'ont écrits
+        private List<Failure<T>> flush(List<T> batch) {
+            List<T> persisted;
+            List<Failure<T>> failures = List.of();
+            try {
+                mongoTemplate.insert(batch, entityClass);
+                persisted = batch;
+            } catch (Exception e) {
+                System.err.println("❌ Échec de l'insertion groupée de " + batch.size() + " " + name + ", repli document par document : " + e.getMessage());
+                persisted = new ArrayList<>(batch.size());
+                failures = new ArrayList<>();
+                for (T item : batch) {
+                    try {
+                        // save est un upsert par _id : rejouer un document déjà inséré ne le duplique pas
+                        mongoTemplate.save(item);
+                        persisted.add(item);
+                    } catch (Exception inner) {
+                        failed.increment();
+                        failures.add(new Failure<>(item, inner.getMessage()));
+                    }
+                }
+            }
+            if (!persisted.isEmpty()) {
+                afterFlush.accept(persisted);
+            }
+            return failures;
+        }
+
+        // attempts : essais déjà retentés pour ces documents (0 au premier échec)
+        private void scheduleRetries(List<Failure<T>> failures, int attempts) {
+            for (Failure<T> failure : failures) {
+                if (attempts >= maxRetries) {
+                    deadLetter(failure, attempts);
+                    continue;
+                }
+                // Délai doublé à chaque essai, plafonné à 64 fois le délai de base
+                long delay = retryDelayMs << Math.min(attempts, 6);
+                retries.add(new Retry<>(failure.item(), attempts + 1, System.currentTimeMillis() + delay));
+                pendingRetries.incrementAndGet();
+            }
+            if (!failures.isEmpty()) {
+                System.err.println("⚠️ " + failures.size() + " " + name + " non persistés (essai " + (attempts + 1) + ") : " + failures.get(0).error());
+            }
+        }
+
+        // Retente les documents arrivés à échéance, tous si force (arrêt), regroupés par nombre d'essais
+        private void retryDue(boolean force) {
+            if (retries.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            List<Retry<T>> due = new ArrayList<>();
+            for (Retry<T> retry : retries) {
+                if ((force || retry.dueAt() <= now) && retries.remove(retry)) {
+                    pendingRetries.decrementAndGet();
+                    due.add(retry);
+                }
+            }
+            for (Retry<T> retry : due) {
+                retried.increment();
+                scheduleRetries(flush(List.of(retry.item())), force ? maxRetries : retry.attempts());
+            }
+        }
+
+        private void deadLetter(Failure<T> failure, int attempts) {
+            try {
+                Document document = new Document();
+                mongoTemplate.getConverter().write(failure.item(), document);
+                mongoTemplate.getCollection(DEAD_LETTER_COLLECTION).insertOne(new Document("collection", mongoTemplate.getCollectionName(entityClass))
+                        .append("document", document)
+                        .append("error", failure.error())
+                        .append("attempts", attempts)
+                        .append("failedAt", new Date()));
+                deadLettered.increment();
+                System.err.println("🪦 Document " + name + " versé dans " + DEAD_LETTER_COLLECTION + " après " + attempts + " essais : " + failure.error());
+            } catch (Exception e) {
+                if (running) {
+                    // MongoDB indisponible : le document reste en file au délai maximal plutôt que d'être perdu
+                    retries.add(new Retry<>(failure.item(), attempts, System.currentTimeMillis() + (retryDelayMs << 6)));
+                    pendingRetries.incrementAndGet();
+                } else {
+                    System.err.println("❌ Document " + name + " perdu à l'arrêt, ni inséré ni versé dans " + DEAD_LETTER_COLLECTION + " : " + failure.item());
+                }
+            }
+        }
+
+        private void stop() {
+            running = false;
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<T> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                scheduleRetries(flush(remaining), maxRetries);
+            }
+            retryDue(true);
+            System.out.println("💾 File write-behind " + name + " vidée avant l'arrêt");
+        }
+    }
+
+    private record Failure<T>(T item, String error) {
+    }
+
+    private record Retry<T>(T item, int attempts, long dueAt) {
+    }
+}
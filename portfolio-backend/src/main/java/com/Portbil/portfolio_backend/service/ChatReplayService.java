@@ -0,0 +1,191 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.BufferedChatSession;
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.entity.User;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import com.Portbil.portfolio_backend.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejeu à la reconnexion : sur une trame "sync", seuls les messages postérieurs au curseur de livraison
+ * de chaque conversation sont renvoyés, par lots "replay" puis un "sync_complete".
+ * Les lots suivent le rythme du tampon sortant de la session, le nombre de rejeux simultanés est borné
+ * (tempête de reconnexions après un déploiement) et chaque conversation est plafonnée : au-delà,
+ * elle est signalée comme tronquée et le client complète via GET /api/chat/{chatId}/messages.
+ */
+@Service
+public class ChatReplayService {
+
+    private static final Sort OLDEST_FIRST = Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "id"));
+    private static final long BUFFER_WAIT_LIMIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final DeliveryCursorService deliveryCursorService;
+    private final ChatFrameCodec chatFrameCodec;
+    private final ExecutorService replayExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int batchSize;
+    private final int maxMessagesPerChat;
+    private final AtomicInteger activeReplays = new AtomicInteger();
+    private final LongAdder replayedMessages;
+    private final LongAdder truncatedChats;
+
+    public ChatReplayService(
+            MessageRepository messageRepository,
+            UserRepository userRepository,
+            DeliveryCursorService deliveryCursorService,
+            ChatFrameCodec chatFrameCodec,
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.replay.batch-size:100}") int batchSize,
+            @Value("${app.chat.replay.max-messages-per-chat:500}") int maxMessagesPerChat,
+            @Value("${app.chat.replay.max-concurrent:32}") int maxConcurrent) {
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.deliveryCursorService = deliveryCursorService;
+        this.chatFrameCodec = chatFrameCodec;
+        this.batchSize = batchSize;
+        this.maxMessagesPerChat = maxMessagesPerChat;
+        this.permits = new Semaphore(maxConcurrent);
+        this.replayedMessages = chatMetrics.counter("chat.replay.messages");
+        this.truncatedChats = chatMetrics.counter("chat.replay.truncated_chats");
+        chatMetrics.gauge("chat.replay.active", activeReplays::get);
+    }
+
+    // Rejeu asynchrone : le thread d'entrée WebSocket n'attend ni MongoDB ni le tampon du client
+    public void replay(String userId, BufferedChatSession session) {
+        replayExecutor.execute(() -> run(userId, session));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replayExecutor.shutdownNow();
+    }
+
+    private void run(String userId, BufferedChatSession session) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        activeReplays.incrementAndGet();
+        try {
+            User user = userRepository.findById(userId).orElse(null);
+            if (user == null || user.getChatIds() == null) {
+                return;
+            }
+            Map<String, String> cursors = deliveryCursorService.getCursors(userId);
+            int total = 0;
+            List<String> truncated = new ArrayList<>();
+            for (String chatId : user.getChatIds()) {
+                String lastMessageId = cursors.get(chatId);
+                if (lastMessageId == null) {
+                    continue; // Jamais acquittée : l'historique se charge par l'API REST
+                }
+                ChatReplay chatReplay = replayChat(chatId, lastMessageId, session);
+                if (chatReplay == null) {
+                    return; // Session fermée ou client trop lent : le prochain "sync" reprendra au curseur
+                }
+                total += chatReplay.sent();
+                if (chatReplay.truncated()) {
+                    truncated.add(chatId);
+                    truncatedChats.increment();
+                }
+            }
+            session.send(chatFrameCodec.encode(new OutboundChatFrame.SyncComplete(total, truncated)));
+            System.out.println("🔁 Rejeu terminé pour userId " + userId + " : " + total + " message(s), " + truncated.size() + " conversation(s) tronquée(s)");
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du rejeu pour userId " + userId + ": " + e.getMessage());
+        } finally {
+            activeReplays.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    private ChatReplay replayChat(String chatId, String lastMessageId, BufferedChatSession session) throws Exception {
+        Instant fromTimestamp;
+        String fromMessageId;
+        Message last = messageRepository.findById(lastMessageId).orElse(null);
+        if (last != null) {
+            fromTimestamp = last.getTimestamp();
+            fromMessageId = last.getId();
+        } else if (ObjectId.isValid(lastMessageId)) {
+            // Message acquitté pas encore écrit par le write-behind : on repart de la seconde de son ObjectId
+            fromTimestamp = new ObjectId(lastMessageId).getDate().toInstant().minusMillis(1);
+            fromMessageId = null;
+        } else {
+            return new ChatReplay(0, false);
+        }
+
+        int sent = 0;
+        while (sent < maxMessagesPerChat) {
+            int size = Math.min(batchSize, maxMessagesPerChat - sent);
+            List<Message> batch = nextBatch(chatId, fromTimestamp, fromMessageId, PageRequest.of(0, size, OLDEST_FIRST));
+            if (batch.isEmpty()) {
+                return new ChatReplay(sent, false);
+            }
+            if (!awaitBufferCapacity(session)) {
+                return null;
+            }
+            List<OutboundChatFrame.ReplayedMessage> messages = new ArrayList<>(batch.size());
+            for (Message message : batch) {
+                messages.add(OutboundChatFrame.ReplayedMessage.from(message));
+            }
+            session.send(chatFrameCodec.encode(new OutboundChatFrame.Replay(chatId, messages)));
+            sent += batch.size();
+            replayedMessages.add(batch.size());
+
+            Message tail = batch.get(batch.size() - 1);
+            fromTimestamp = tail.getTimestamp();
+            fromMessageId = tail.getId();
+            if (batch.size() < size) {
+                return new ChatReplay(sent, false);
+            }
+        }
+        boolean more = !nextBatch(chatId, fromTimestamp, fromMessageId, PageRequest.of(0, 1, OLDEST_FIRST)).isEmpty();
+        return new ChatReplay(sent, more);
+    }
+
+    private List<Message> nextBatch(String chatId, Instant fromTimestamp, String fromMessageId, Pageable pageable) {
+        return fromMessageId != null
+                ? messageRepository.findPageAfterMessage(chatId, fromTimestamp, fromMessageId, pageable)
+                : messageRepository.findPageAfterTimestamp(chatId, fromTimestamp, pageable);
+    }
+
+    // Attend que le tampon sortant soit à moitié vide avant d'y ajouter un lot (pas de perte par débordement)
+    private boolean awaitBufferCapacity(BufferedChatSession session) throws InterruptedException {
+        long deadline = System.nanoTime() + BUFFER_WAIT_LIMIT_NANOS;
+        while (session.getBufferSize() > session.getBufferSizeLimit() / 2) {
+            if (!session.isOpen() || System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return session.isOpen();
+    }
+
+    private record ChatReplay(int sent, boolean truncated) {
+    }
+}
@@ -0,0 +1,380 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.Portbil.portfolio_backend.config.ChatClusterBus;
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Recherche plein texte en mémoire sur les messages du chat : un index inversé par conversation
+ * (terme normalisé → ids de messages, du plus récent au plus ancien), alimenté à chaque lot persisté.
+ * Chaque nœud tient son propre index : les lots persistés, modifications et suppressions d'un nœud sont publiés
+ * (id, conversation, texte) sur le {@link ChatClusterBus} et appliqués par les autres.
+ * La normalisation replie casse et accents (français/anglais) et unifie les variantes de l'arabe
+ * (harakat, hamza, alef, ta marbuta, alef maqsura, tatweel). Le dernier terme d'une requête est un préfixe.
+ * L'index se reconstruit depuis MongoDB (messages chauds + archive) au démarrage ou à la demande.
+ */
+@Service
+public class ChatSearchService implements MessagePersistListener {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final String INDEX = "index";
+    private static final String REMOVE = "remove";
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageRepository messageRepository;
+    private final MessageArchiveService messageArchiveService;
+    private final ChatClusterBus chatClusterBus;
+    private final ObjectWriter entriesWriter;
+    private final ObjectReader entriesReader;
+    private final boolean rebuildOnStartup;
+    private final LongAdder indexedMessages;
+    private final AtomicBoolean rebuildInProgress = new AtomicBoolean();
+
+    // chatId → index de la conversation ; remplacé d'un bloc à la fin d'une reconstruction
+    private volatile Map<String, ChatIndex> index = new ConcurrentHashMap<>();
+    // Index en cours de reconstruction : reçoit aussi les messages persistés pendant la reconstruction
+    private volatile Map<String, ChatIndex> rebuilding;
+
+    public ChatSearchService(
+            MongoTemplate mongoTemplate,
+            MessageRepository messageRepository,
+            MessageArchiveService messageArchiveService,
+            ChatClusterBus chatClusterBus,
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.search.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageRepository = messageRepository;
+        this.messageArchiveService = messageArchiveService;
+        this.chatClusterBus = chatClusterBus;
+        JsonMapper mapper = JsonMapper.builder().build();
+        TypeReference<List<IndexEntry>> entryList = new TypeReference<>() {
+        };
+        this.entriesWriter = mapper.writerFor(entryList);
+        this.entriesReader = mapper.readerFor(entryList);
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.indexedMessages = chatMetrics.counter("chat.search.indexed_messages");
+        chatMetrics.gauge("chat.search.chats", () -> index.size());
+    }
+
+    @PostConstruct
+    public void subscribeToClusterIndexing() {
+        chatClusterBus.subscribe(ChatClusterBus.SEARCH_TOPIC, (userIds, payload) -> {
+            int separator = payload.indexOf('|');
+            if (separator < 0) {
+                return;
+            }
+            boolean removal = REMOVE.equals(payload.substring(0, separator));
+            try {
+                List<IndexEntry> entries = entriesReader.readValue(payload.substring(separator + 1));
+                for (IndexEntry entry : entries) {
+                    Message message = Message.builder().id(entry.id()).chatId(entry.chatId()).content(entry.content()).build();
+                    if (removal) {
+                        removeLocal(message);
+                    } else {
+                        indexLocal(message);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Événement d'indexation du cluster illisible : " + e.getMessage());
+            }
+        });
+    }
+
+    // Un lot persisté = une seule publication pour les autres nœuds
+    @Override
+    public void onMessagesPersisted(List<Message> messages) {
+        for (Message message : messages) {
+            indexLocal(message);
+        }
+        publish(INDEX, messages);
+    }
+
+    public void index(Message message) {
+        indexLocal(message);
+        publish(INDEX, List.of(message));
+    }
+
+    public void remove(Message message) {
+        removeLocal(message);
+        publish(REMOVE, List.of(message));
+    }
+
+    private void indexLocal(Message message) {
+        add(index, message);
+        Map<String, ChatIndex> pending = rebuilding;
+        if (pending != null) {
+            add(pending, message);
+        }
+        indexedMessages.increment();
+    }
+
+    private void removeLocal(Message message) {
+        if (message.getChatId() == null || message.getContent() == null) {
+            return;
+        }
+        Set<String> terms = tokenize(message.getContent());
+        removeFrom(index, message, terms);
+        Map<String, ChatIndex> pending = rebuilding;
+        if (pending != null) {
+            removeFrom(pending, message, terms);
+        }
+    }
+
+    private void publish(String operation, List<Message> messages) {
+        List<IndexEntry> entries = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (message.getChatId() != null && message.getId() != null && message.getContent() != null) {
+                entries.add(new IndexEntry(message.getId(), message.getChatId(), message.getContent()));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            chatClusterBus.publish(ChatClusterBus.SEARCH_TOPIC, List.of(), operation + "|" + entriesWriter.writeValueAsString(entries));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la publication de " + entries.size() + " message(s) à indexer : " + e.getMessage());
+        }
+    }
+
+    // Messages correspondant à tous les termes, limités aux conversations données, du plus récent au plus ancien
+    public List<Message> search(Collection<String> chatIds, String query, Integer limit) {
+        List<String> terms = new ArrayList<>(tokenize(query));
+        int size = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        String prefix = terms.remove(terms.size() - 1);
+
+        // Ids ObjectId hexadécimaux : l'ordre décroissant des ids suit l'ordre d'envoi
+        NavigableSet<String> hits = new TreeSet<>(Comparator.reverseOrder());
+        Map<String, String> chatByMessage = new HashMap<>();
+        Map<String, ChatIndex> current = index;
+        for (String chatId : chatIds) {
+            ChatIndex chatIndex = current.get(chatId);
+            if (chatIndex == null) {
+                continue;
+            }
+            for (String messageId : chatIndex.match(terms, prefix, size)) {
+                hits.add(messageId);
+                chatByMessage.put(messageId, chatId);
+            }
+            while (hits.size() > size) {
+                hits.pollLast();
+            }
+        }
+        return load(hits, chatByMessage);
+    }
+
+    // Reconstruction complète depuis MongoDB ; false si une reconstruction est déjà en cours
+    public boolean rebuild() {
+        if (!rebuildInProgress.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread.ofVirtual().name("chat-search-rebuild").start(() -> {
+            long start = System.currentTimeMillis();
+            Map<String, ChatIndex> fresh = new ConcurrentHashMap<>();
+            rebuilding = fresh;
+            try {
+                messageArchiveService.forEachArchivedMessage(message -> add(fresh, message));
+                try (Stream<Message> messages = mongoTemplate.stream(new Query(), Message.class)) {
+                    messages.forEach(message -> add(fresh, message));
+                }
+                index = fresh;
+                System.out.println("🔎 Index de recherche reconstruit : " + fresh.size() + " conversation(s) en "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                System.err.println("❌ Échec de la reconstruction de l'index de recherche : " + e.getMessage());
+            } finally {
+                rebuilding = null;
+                rebuildInProgress.set(false);
+            }
+        });
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAtStartup() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    // Minuscules, accents et harakat retirés (NFD), variantes arabes unifiées, découpage sur tout ce qui n'est ni lettre ni chiffre
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isBlank()) {
+            return terms;
+        }
+        String folded = COMBINING_MARKS.matcher(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)).replaceAll("");
+        StringBuilder normalized = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            switch (c) {
+                case 'ـ' -> { } // Tatweel
+                case 'ٱ' -> normalized.append('ا');
+                case 'ة' -> normalized.append('ه');
+                case 'ى' -> normalized.append('ي');
+                default -> normalized.append(c);
+            }
+        }
+        for (String token : TOKEN_SEPARATOR.split(normalized)) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+
+    private void add(Map<String, ChatIndex> target, Message message) {
+        if (message.getChatId() == null || message.getId() == null || message.getContent() == null) {
+            return;
+        }
+        ChatIndex chatIndex = target.computeIfAbsent(message.getChatId(), chatId -> new ChatIndex());
+        for (String term : tokenize(message.getContent())) {
+            chatIndex.add(term, message.getId());
+        }
+    }
+
+    private void removeFrom(Map<String, ChatIndex> target, Message message, Set<String> terms) {
+        ChatIndex chatIndex = target.get(message.getChatId());
+        if (chatIndex != null) {
+            for (String term : terms) {
+                chatIndex.remove(term, message.getId());
+            }
+        }
+    }
+
+    private List<Message> load(NavigableSet<String> ids, Map<String, String> chatByMessage) {
+        Map<String, Message> byId = new HashMap<>();
+        for (Message message : messageRepository.findAllById(ids)) {
+            byId.put(message.getId(), message);
+        }
+        // Messages passés dans l'archive depuis leur indexation : une lecture de l'archive par conversation
+        Map<String, List<String>> archivedByChat = new HashMap<>();
+        for (String id : ids) {
+            if (!byId.containsKey(id)) {
+                archivedByChat.computeIfAbsent(chatByMessage.get(id), chatId -> new ArrayList<>()).add(id);
+            }
+        }
+        archivedByChat.forEach((chatId, messageIds) -> byId.putAll(messageArchiveService.findMessages(chatId, messageIds)));
+        List<Message> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Message message = byId.get(id);
+            if (message != null) {
+                results.add(message);
+            }
+        }
+        results.sort(Comparator.comparing(Message::getTimestamp).reversed());
+        return results;
+    }
+
+    // Ce que les autres nœuds doivent connaître d'un message pour l'indexer ou le retirer
+    private record IndexEntry(String id, String chatId, String content) {
+    }
+
+    private static final class ChatIndex {
+
+        private final ConcurrentSkipListMap<String, NavigableSet<String>> postings = new ConcurrentSkipListMap<>();
+
+        void add(String term, String messageId) {
+            postings.computeIfAbsent(term, t -> new ConcurrentSkipListSet<>(Comparator.reverseOrder())).add(messageId);
+        }
+
+        void remove(String term, String messageId) {
+            postings.computeIfPresent(term, (t, ids) -> {
+                ids.remove(messageId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        // Intersection des listes exactes et de l'union des listes dont le terme commence par le préfixe. L'union n'est
+        // jamais copiée : fusion à k voies des listes (toutes triées du plus récent au plus ancien), arrêtée à limit
+        List<String> match(List<String> terms, String prefix, int limit) {
+            List<Set<String>> required = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                NavigableSet<String> ids = postings.get(term);
+                if (ids == null) {
+                    return List.of();
+                }
+                required.add(ids);
+            }
+            Collection<NavigableSet<String>> prefixed = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+
+            // Tête de chaque liste, la plus récente en premier
+            PriorityQueue<Head> heads = new PriorityQueue<>();
+            for (NavigableSet<String> ids : prefixed) {
+                Iterator<String> iterator = ids.iterator();
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+            List<String> matches = new ArrayList<>();
+            String previous = null;
+            while (!heads.isEmpty() && matches.size() < limit) {
+                Head head = heads.poll();
+                String messageId = head.messageId();
+                if (head.rest().hasNext()) {
+                    heads.add(new Head(head.rest().next(), head.rest()));
+                }
+                // Un message présent sous plusieurs termes du préfixe ressort une fois par terme, consécutivement
+                if (messageId.equals(previous)) {
+                    continue;
+                }
+                previous = messageId;
+                if (required.stream().allMatch(ids -> ids.contains(messageId))) {
+                    matches.add(messageId);
+                }
+            }
+            return matches;
+        }
+
+        private record Head(String messageId, Iterator<String> rest) implements Comparable<Head> {
+
+            @Override
+            public int compareTo(Head other) {
+                return other.messageId.compareTo(messageId);
+            }
+        }
+    }
+}
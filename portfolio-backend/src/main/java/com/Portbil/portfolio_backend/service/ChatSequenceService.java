@@ -0,0 +1,102 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.entity.ChatSequence;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Numéros de séquence par conversation : 1, 2, 3… sans doublon, attribués un par message par un findAndModify $inc
+ * sur le compteur chat_sequences de la conversation. Le client détecte un message manquant à un saut de numéro
+ * et demande "tout après N" (GET /api/chat/{chatId}/delta).
+ * Le compteur porte aussi persistedSeq, le plus haut numéro N tel que tous les numéros jusqu'à N sont insérés
+ * dans messages : c'est lui que renvoie le delta, jamais un numéro au-dessus d'un message encore en vol (sur ce
+ * nœud ou un autre). Il avance à la lecture, en parcourant l'index (chatId, seq) au-delà de sa valeur stockée.
+ * Un numéro absent depuis plus de app.chat.sequence.gap-timeout-ms (message dont l'écriture a échoué, archivé ou
+ * supprimé) est un trou définitif et ne bloque plus la marque.
+ * Appelé depuis la voie sérielle de la conversation ({@link com.Portbil.portfolio_backend.config.ChatLanes}) :
+ * l'ordre des numéros est celui des horodatages et de la livraison.
+ */
+@Service
+public class ChatSequenceService {
+
+    private static final FindAndModifyOptions RETURN_NEW_UPSERT = FindAndModifyOptions.options().returnNew(true).upsert(true);
+    private static final Sort SEQ_ASC = Sort.by(Sort.Direction.ASC, "seq");
+    private static final int SCAN_PAGE_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageRepository messageRepository;
+    private final long gapTimeoutMs;
+
+    public ChatSequenceService(
+            MongoTemplate mongoTemplate,
+            MessageRepository messageRepository,
+            @Value("${app.chat.sequence.gap-timeout-ms:30000}") long gapTimeoutMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageRepository = messageRepository;
+        this.gapTimeoutMs = gapTimeoutMs;
+    }
+
+    public long next(String chatId) {
+        Query query = Query.query(Criteria.where("_id").is(chatId));
+        Update increment = new Update().inc("seq", 1);
+        try {
+            return mongoTemplate.findAndModify(query, increment, RETURN_NEW_UPSERT, ChatSequence.class).getSeq();
+        } catch (DuplicateKeyException e) {
+            // Deux premiers messages simultanés (deux nœuds) : le compteur existe désormais, l'incrément aboutit
+            return mongoTemplate.findAndModify(query, increment, RETURN_NEW_UPSERT, ChatSequence.class).getSeq();
+        }
+    }
+
+    // Plus haut numéro N dont tous les prédécesseurs sont persistés (ou abandonnés), 0 si aucun
+    public long current(String chatId) {
+        ChatSequence sequence = mongoTemplate.findById(chatId, ChatSequence.class);
+        if (sequence == null) {
+            return 0;
+        }
+        long stored = sequence.getPersistedSeq();
+        if (stored >= sequence.getSeq()) {
+            return stored;
+        }
+
+        // Un message créé avant cette limite et toujours absent ne sera plus inséré
+        Instant gapDeadline = Instant.now().minusMillis(gapTimeoutMs);
+        long contiguous = stored;
+        boolean blocked = false;
+        while (!blocked) {
+            List<Message> page = messageRepository.findSeqsAfter(chatId, contiguous, PageRequest.of(0, SCAN_PAGE_SIZE, SEQ_ASC));
+            for (Message message : page) {
+                long seq = message.getSeq();
+                // Le message qui suit un trou est plus récent que lui : s'il est ancien, le trou l'est aussi
+                if (seq == contiguous + 1 || message.getTimestamp().isBefore(gapDeadline)) {
+                    contiguous = seq;
+                } else {
+                    blocked = true;
+                    break;
+                }
+            }
+            if (page.size() < SCAN_PAGE_SIZE) {
+                break;
+            }
+        }
+
+        if (contiguous > stored) {
+            // $max : deux lectures concurrentes (deux nœuds) ne font jamais reculer la marque
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(chatId)),
+                    new Update().max("persistedSeq", contiguous), ChatSequence.class);
+        }
+        return contiguous;
+    }
+}
@@ -0,0 +1,253 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.dto.ChatSummaryDTO;
+import com.Portbil.portfolio_backend.entity.ChatSummary;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.repository.ChatSummaryRepository;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Boîte de réception : un document résumé par conversation (dernier message, participants),
+ * tenu à jour à chaque lot de messages persisté. La liste des conversations d'un utilisateur
+ * est une lecture paginée par récence sur ces résumés, complétée par les compteurs de non-lus.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatSummaryService implements MessagePersistListener {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final Sort MOST_RECENT_FIRST = Sort.by(Sort.Direction.DESC, "lastTimestamp").and(Sort.by(Sort.Direction.DESC, "id"));
+    private static final Sort NEWEST_MESSAGE_FIRST = Sort.by(Sort.Direction.DESC, "timestamp").and(Sort.by(Sort.Direction.DESC, "id"));
+    private static final int BACKFILL_BATCH_SIZE = 500;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ChatSummaryRepository chatSummaryRepository;
+    private final MessageRepository messageRepository;
+    private final MongoTemplate mongoTemplate;
+    private final GroupMembershipService groupMembershipService;
+    private final UnreadCounterService unreadCounterService;
+
+    @Override
+    public void onMessagesPersisted(List<Message> messages) {
+        // Seul le dernier message de chaque conversation du lot compte
+        Map<String, Message> latestByChat = new LinkedHashMap<>();
+        for (Message message : messages) {
+            if (message.getChatId() != null && message.getTimestamp() != null) {
+                latestByChat.merge(message.getChatId(), message, (current, candidate) -> isAfter(candidate, current) ? candidate : current);
+            }
+        }
+        List<ChatSummary> summaries = new ArrayList<>(latestByChat.size());
+        for (Message message : latestByChat.values()) {
+            summaries.add(summarize(message));
+        }
+        upsertAll(summaries);
+    }
+
+    public List<ChatSummaryDTO> getInbox(String userId, String before, Integer limit) {
+        Pageable pageable = PageRequest.of(0, pageSize(limit), MOST_RECENT_FIRST);
+        List<ChatSummary> page;
+        if (before == null || before.isBlank()) {
+            page = chatSummaryRepository.findPageByParticipant(userId, pageable);
+        } else {
+            try {
+                page = chatSummaryRepository.findPageByParticipantBeforeTimestamp(userId, Instant.parse(before), pageable);
+            } catch (DateTimeParseException e) {
+                ChatSummary cursor = chatSummaryRepository.findById(before)
+                        .filter(summary -> summary.getParticipantIds().contains(userId))
+                        .orElseThrow(() -> new IllegalArgumentException("Curseur de pagination invalide : " + before));
+                page = chatSummaryRepository.findPageByParticipantBefore(userId, cursor.getLastTimestamp(), cursor.getId(), pageable);
+            }
+        }
+
+        List<String> chatIds = page.stream().map(ChatSummary::getId).toList();
+        Map<String, Long> unread = unreadCounterService.getUnreadCounts(userId, chatIds);
+        return page.stream().map(summary -> ChatSummaryDTO.builder()
+                .chatId(summary.getId())
+                .type(summary.getType())
+                .participantIds(summary.getParticipantIds())
+                .lastMessageId(summary.getLastMessageId())
+                .lastFromUserId(summary.getLastFromUserId())
+                .lastContent(summary.getLastContent())
+                .lastTimestamp(summary.getLastTimestamp())
+                .unreadCount(unread.getOrDefault(summary.getId(), 0L))
+                .build()).toList();
+    }
+
+    // Modification d'un message : le résumé ne change que s'il s'agit du dernier message de la conversation
+    public void onMessageEdited(Message message) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(message.getChatId()).and("lastMessageId").is(message.getId())),
+                new Update().set("lastContent", message.getContent()),
+                ChatSummary.class);
+    }
+
+    // Suppression du dernier message : le résumé repart du message précédent (ou disparaît)
+    public void onMessageDeleted(Message message) {
+        ChatSummary summary = chatSummaryRepository.findById(message.getChatId()).orElse(null);
+        if (summary == null || !message.getId().equals(summary.getLastMessageId())) {
+            return;
+        }
+        List<Message> latest = messageRepository.findPageByChatId(message.getChatId(), PageRequest.of(0, 1, NEWEST_MESSAGE_FIRST));
+        if (latest.isEmpty()) {
+            chatSummaryRepository.deleteById(message.getChatId());
+            return;
+        }
+        Message previous = latest.get(0);
+        summary.setLastMessageId(previous.getId());
+        summary.setLastFromUserId(previous.getFromUserId());
+        summary.setLastContent(previous.getContent());
+        summary.setLastTimestamp(previous.getTimestamp());
+        chatSummaryRepository.save(summary);
+    }
+
+    // Conversations antérieures aux résumés : construits une fois par agrégation sur les messages
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (chatSummaryRepository.count() > 0 || messageRepository.count() == 0) {
+            return;
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chatId").ne(null)),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "timestamp", "_id")),
+                Aggregation.group("chatId")
+                        .last("_id").as("lastMessageId")
+                        .last("type").as("type")
+                        .last("fromUserId").as("lastFromUserId")
+                        .last("content").as("lastContent")
+                        .last("timestamp").as("lastTimestamp")
+                        .addToSet("fromUserId").as("senders")
+                        .addToSet("toUserId").as("recipients"))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        int total = 0;
+        List<ChatSummary> batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+        try (Stream<Document> stream = mongoTemplate.aggregateStream(aggregation, Message.class, Document.class)) {
+            Iterator<Document> rows = stream.iterator();
+            while (rows.hasNext()) {
+                batch.add(fromAggregate(rows.next()));
+                if (batch.size() == BACKFILL_BATCH_SIZE) {
+                    upsertAll(batch);
+                    total += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        upsertAll(batch);
+        total += batch.size();
+        System.out.println("📚 " + total + " résumé(s) de conversation construit(s) à partir de l'historique");
+    }
+
+    private ChatSummary summarize(Message message) {
+        Set<String> participants = new LinkedHashSet<>();
+        if ("group_message".equals(message.getType())) {
+            participants.addAll(groupMembershipService.getMembers(message.getChatId()));
+        } else {
+            participants.add(message.getFromUserId());
+            participants.add(message.getToUserId());
+        }
+        participants.remove(null);
+        return ChatSummary.builder()
+                .id(message.getChatId())
+                .type(message.getType())
+                .participantIds(new ArrayList<>(participants))
+                .lastMessageId(message.getId())
+                .lastFromUserId(message.getFromUserId())
+                .lastContent(message.getContent())
+                .lastTimestamp(message.getTimestamp())
+                .build();
+    }
+
+    private ChatSummary fromAggregate(Document row) {
+        String chatId = row.getString("_id");
+        String type = row.getString("type");
+        Set<String> participants = new LinkedHashSet<>();
+        if ("group_message".equals(type)) {
+            participants.addAll(groupMembershipService.getMembers(chatId));
+        } else {
+            participants.addAll(row.getList("senders", String.class, List.of()));
+            participants.addAll(row.getList("recipients", String.class, List.of()));
+        }
+        participants.remove(null);
+        Date lastTimestamp = row.getDate("lastTimestamp");
+        Object lastMessageId = row.get("lastMessageId");
+        return ChatSummary.builder()
+                .id(chatId)
+                .type(type)
+                .participantIds(new ArrayList<>(participants))
+                .lastMessageId(lastMessageId != null ? lastMessageId.toString() : null)
+                .lastFromUserId(row.getString("lastFromUserId"))
+                .lastContent(row.getString("lastContent"))
+                .lastTimestamp(lastTimestamp != null ? lastTimestamp.toInstant() : null)
+                .build();
+    }
+
+    private void upsertAll(List<ChatSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatSummary.class);
+        for (ChatSummary summary : summaries) {
+            // Ne remplace le dernier message que par un plus récent ; si le résumé stocké est déjà plus récent,
+            // l'upsert tente une insertion sur le même _id et échoue en clé dupliquée (ignorée ci-dessous)
+            Query query = Query.query(Criteria.where("_id").is(summary.getId()).orOperator(
+                    Criteria.where("lastTimestamp").lt(summary.getLastTimestamp()),
+                    Criteria.where("lastTimestamp").is(summary.getLastTimestamp()).and("lastMessageId").lt(summary.getLastMessageId())));
+            bulk.upsert(query, new Update()
+                    .set("type", summary.getType())
+                    .set("lastMessageId", summary.getLastMessageId())
+                    .set("lastFromUserId", summary.getLastFromUserId())
+                    .set("lastContent", summary.getLastContent())
+                    .set("lastTimestamp", summary.getLastTimestamp())
+                    .addToSet("participantIds").each(summary.getParticipantIds().toArray()));
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            long failures = e.getErrors().stream().filter(error -> error.getCode() != DUPLICATE_KEY).count();
+            if (failures > 0) {
+                System.err.println("❌ " + failures + " résumé(s) de conversation non mis à jour : " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isAfter(Message candidate, Message current) {
+        int byTimestamp = candidate.getTimestamp().compareTo(current.getTimestamp());
+        return byTimestamp > 0 || (byTimestamp == 0 && candidate.getId().compareTo(current.getId()) > 0);
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+}
@@ -0,0 +1,164 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.entity.Conversation;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.entity.User;
+import com.Portbil.portfolio_backend.repository.ConversationRepository;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import com.Portbil.portfolio_backend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Registre des conversations privées : une paire d'utilisateurs correspond à un document conversations
+ * identifié par la clé canonique (minUserId, maxUserId), avec un cache LRU devant.
+ * Résoudre le chatId d'une paire est une lecture mémoire ou une recherche ponctuelle sur l'index unique.
+ */
+@Service
+public class ConversationService {
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final GroupMembershipService groupMembershipService;
+    private final Map<String, String> chatIdsByPair;
+    // chatId → participants d'une conversation privée (immuables une fois la conversation créée)
+    private final Map<String, Collection<String>> participantsByChat;
+
+    public ConversationService(
+            ConversationRepository conversationRepository,
+            MessageRepository messageRepository,
+            UserRepository userRepository,
+            GroupMembershipService groupMembershipService,
+            @Value("${app.chat.conversation-cache-size:10000}") int cacheSize) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.groupMembershipService = groupMembershipService;
+        this.chatIdsByPair = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.participantsByChat = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Collection<String>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public static String pairKey(String userId, String otherUserId) {
+        return userId.compareTo(otherUserId) <= 0 ? userId + ":" + otherUserId : otherUserId + ":" + userId;
+    }
+
+    public String getOrCreatePrivateChatId(String userId, String otherUserId) {
+        if (userId.equals(otherUserId)) {
+            throw new IllegalArgumentException("Impossible de créer une conversation avec soi-même");
+        }
+        String key = pairKey(userId, otherUserId);
+        String cached = chatIdsByPair.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String chatId = conversationRepository.findByPairKey(key)
+                .map(Conversation::getId)
+                .orElseGet(() -> register(key, userId, otherUserId));
+        chatIdsByPair.put(key, chatId);
+        return chatId;
+    }
+
+    // Participants d'un lot de conversations : une requête pour les conversations privées, l'index mémoire pour les groupes.
+    // Les chatIds inconnus sont absents du résultat.
+    public Map<String, Collection<String>> getParticipants(Collection<String> chatIds) {
+        Map<String, Collection<String>> participants = new HashMap<>();
+        for (Conversation conversation : conversationRepository.findAllById(chatIds)) {
+            participants.put(conversation.getId(), conversation.getParticipantIds());
+        }
+        for (String chatId : chatIds) {
+            if (!participants.containsKey(chatId) && groupMembershipService.exists(chatId)) {
+                participants.put(chatId, groupMembershipService.getMembers(chatId));
+            }
+        }
+        return participants;
+    }
+
+    // Participant d'une conversation privée (cache LRU) ou membre d'un groupe (index d'appartenance)
+    public boolean isParticipant(String chatId, String userId) {
+        Collection<String> participants = participantsByChat.get(chatId);
+        if (participants == null) {
+            participants = conversationRepository.findById(chatId).map(Conversation::getParticipantIds).orElse(null);
+            if (participants == null) {
+                return groupMembershipService.isMember(chatId, userId);
+            }
+            participantsByChat.put(chatId, participants);
+        }
+        return participants.contains(userId);
+    }
+
+    private String register(String key, String userId, String otherUserId) {
+        if (!userRepository.existsById(otherUserId)) {
+            throw new IllegalArgumentException("Utilisateur introuvable : " + otherUserId);
+        }
+
+        // Conversation antérieure au registre : reprendre le chatId déjà porté par les messages de la paire (index
+        // type_from_to_idx), sinon celui que les deux utilisateurs partagent déjà dans leurs chatIds
+        String chatId = messageRepository.findFirstByTypeAndFromUserIdAndToUserId("private", userId, otherUserId)
+                .or(() -> messageRepository.findFirstByTypeAndFromUserIdAndToUserId("private", otherUserId, userId))
+                .map(Message::getChatId)
+                .or(() -> sharedChatId(userId, otherUserId))
+                .orElseGet(() -> UUID.randomUUID().toString());
+
+        Conversation conversation = Conversation.builder()
+                .id(chatId)
+                .pairKey(key)
+                .participantIds(List.of(key.substring(0, key.indexOf(':')), key.substring(key.indexOf(':') + 1)))
+                .createdAt(Instant.now())
+                .build();
+        try {
+            conversationRepository.insert(conversation);
+        } catch (DuplicateKeyException e) {
+            // Création concurrente de la même paire : la première écriture fait foi
+            return conversationRepository.findByPairKey(key)
+                    .map(Conversation::getId)
+                    .orElseThrow(() -> e);
+        }
+
+        userRepository.findAndAddChatIdById(userId, chatId);
+        userRepository.findAndAddChatIdById(otherUserId, chatId);
+        System.out.println("✅ Conversation " + chatId + " enregistrée pour la paire " + key);
+        return chatId;
+    }
+
+    // Ancienne résolution : premier chatId commun aux deux utilisateurs, hors groupes et hors conversations déjà
+    // enregistrées (pour une autre paire)
+    private Optional<String> sharedChatId(String userId, String otherUserId) {
+        List<String> chatIds = userRepository.findById(userId).map(User::getChatIds).orElse(null);
+        if (chatIds == null || chatIds.isEmpty()) {
+            return Optional.empty();
+        }
+        Set<String> otherChatIds = userRepository.findById(otherUserId)
+                .map(User::getChatIds)
+                .<Set<String>>map(HashSet::new)
+                .orElse(Set.of());
+        return chatIds.stream()
+                .filter(otherChatIds::contains)
+                .filter(chatId -> !conversationRepository.existsById(chatId) && !groupMembershipService.exists(chatId))
+                .findFirst();
+    }
+}
@@ -0,0 +1,107 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.entity.DeliveryCursor;
+import com.Portbil.portfolio_backend.repository.DeliveryCursorRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Curseurs de livraison : dernier message acquitté par chaque utilisateur, par conversation.
+ * Les acquittements sont fusionnés en mémoire (un curseur n'avance jamais à reculons) puis écrits
+ * par lots ; un client qui acquitte chaque message ne coûte donc qu'une écriture par conversation et par flush.
+ */
+@Service
+@RequiredArgsConstructor
+public class DeliveryCursorService {
+
+    private final DeliveryCursorRepository deliveryCursorRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ChatMetrics chatMetrics;
+
+    // "userId:chatId" → dernier id acquitté pas encore persisté
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMetrics() {
+        chatMetrics.gauge("chat.cursors.pending", pending::size);
+    }
+
+    // L'appartenance à la conversation est vérifiée par l'appelant (ReadReceiptService) ; l'id doit être un ObjectId
+    public void acknowledge(String userId, String chatId, String messageId) {
+        if (chatId == null || messageId == null || !ObjectId.isValid(messageId)) {
+            return;
+        }
+        pending.merge(key(userId, chatId), messageId, DeliveryCursorService::latest);
+    }
+
+    // Curseurs de l'utilisateur (chatId → dernier id acquitté), acquittements non encore persistés inclus
+    public Map<String, String> getCursors(String userId) {
+        Map<String, String> cursors = new HashMap<>();
+        for (DeliveryCursor cursor : deliveryCursorRepository.findByUserId(userId)) {
+            cursors.put(cursor.getChatId(), cursor.getLastMessageId());
+        }
+        String prefix = userId + ":";
+        pending.forEach((key, messageId) -> {
+            if (key.startsWith(prefix)) {
+                cursors.merge(key.substring(prefix.length()), messageId, DeliveryCursorService::latest);
+            }
+        });
+        return cursors;
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.replay.cursor-flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeliveryCursor.class);
+        Map<String, String> flushed = new HashMap<>();
+        pending.forEach((key, messageId) -> {
+            int separator = key.indexOf(':');
+            // $max : un flush d'un autre nœud, arrivé plus tard avec un curseur plus ancien, ne fait pas reculer
+            bulk.upsert(Query.query(Criteria.where("_id").is(key)), new Update()
+                    .max("lastMessageId", messageId)
+                    .setOnInsert("userId", key.substring(0, separator))
+                    .setOnInsert("chatId", key.substring(separator + 1))
+                    .set("updatedAt", now));
+            flushed.put(key, messageId);
+        });
+        try {
+            bulk.execute();
+            // Retirer seulement ce qui a été écrit : un acquittement arrivé pendant le flush reste en attente
+            flushed.forEach(pending::remove);
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la persistance des curseurs de livraison : " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private static String key(String userId, String chatId) {
+        return userId + ":" + chatId;
+    }
+
+    // Les ids ObjectId hexadécimaux de même longueur se comparent dans l'ordre de création
+    private static String latest(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
@@ -1,19 +1,14 @@
 package com.Portbil.portfolio_backend.service;
 
-import com.Portbil.portfolio_backend.config.ChatWebSocketHandler;
 import com.Portbil.portfolio_backend.dto.FriendRequestDTO;
 import com.Portbil.portfolio_backend.entity.FriendRequest;
-import com.Portbil.portfolio_backend.entity.Notification;
 import com.Portbil.portfolio_backend.entity.User;
 import com.Portbil.portfolio_backend.repository.FriendRequestRepository;
-import com.Portbil.portfolio_backend.repository.NotificationRepository;
 import com.Portbil.portfolio_backend.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -32,10 +27,7 @@ public class FriendRequestService {
     private UserRepository userRepository;
 
     @Autowired
-    private ChatWebSocketHandler chatWebSocketHandler;
-
-    @Autowired
-    private NotificationRepository notificationRepository;
+    private NotificationService notificationService;
 
     public FriendRequestDTO sendFriendRequest(String senderId, String receiverId) {
         if (senderId == null || senderId.isEmpty() || receiverId == null || receiverId.isEmpty()) {
@@ -86,22 +78,13 @@ public class FriendRequestService {
             Map<String, String> notificationData = new HashMap<>();
             notificationData.put("requestId", friendRequest.getId());
             notificationData.put("fromUserId", sender.getId());
-            notificationData.put("firstName", sender.getFirstName());
-            notificationData.put("lastName", sender.getLastName());
-            notificationData.put("email", sender.getEmail());
-            notificationData.put("profilePictureUrl", sender.getProfilePictureUrl() != null ? sender.getProfilePictureUrl() : "");
-
-            String receiverMessage = "Nouvelle demande d'ami reçue de " + sender.getFirstName() + " " + sender.getLastName();
-            chatWebSocketHandler.sendNotification(receiverId, "friend_request_received", receiverMessage, notificationData);
-            persistNotification(receiverId, "friend_request_received", receiverMessage, notificationData);
+            notificationService.notifyUser(receiverId, "friend_request_received", sender.getId(), notificationData);
 
-            String senderMessage = "Demande d'ami envoyée avec succès à " + receiver.getFirstName() + " " + receiver.getLastName();
             notificationData.put("toUserId", receiverId);
-            chatWebSocketHandler.sendNotification(senderId, "friend_request_sent", senderMessage, notificationData);
-            persistNotification(senderId, "friend_request_sent", senderMessage, notificationData);
+            notificationService.notifyUser(senderId, "friend_request_sent", receiverId, notificationData);
 
             System.out.println("📢 Notifications envoyées et persistantées pour sendFriendRequest (sender: " + senderId + ", receiver: " + receiverId + ")");
-        } catch (IOException e) {
+        } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi des notifications pour sendFriendRequest : " + e.getMessage());
         }
 
@@ -145,26 +128,14 @@ public class FriendRequestService {
             Map<String, String> notificationData = new HashMap<>();
             notificationData.put("requestId", requestId);
             notificationData.put("fromUserId", receiver.getId());
-            notificationData.put("firstName", receiver.getFirstName());
-            notificationData.put("lastName", receiver.getLastName());
-            notificationData.put("email", receiver.getEmail());
-            notificationData.put("profilePictureUrl", receiver.getProfilePictureUrl() != null ? receiver.getProfilePictureUrl() : "");
-
-            String senderMessage = "Votre demande d'ami a été acceptée par " + receiver.getFirstName() + " " + receiver.getLastName();
-            chatWebSocketHandler.sendNotification(sender.getId(), "friend_request_accepted", senderMessage, notificationData);
-            persistNotification(sender.getId(), "friend_request_accepted", senderMessage, notificationData);
+            notificationService.notifyUser(sender.getId(), "friend_request_accepted", receiver.getId(), notificationData);
 
             notificationData.put("fromUserId", sender.getId());
-            notificationData.put("firstName", sender.getFirstName());
-            notificationData.put("lastName", sender.getLastName());
-            notificationData.put("email", sender.getEmail());
-            notificationData.put("profilePictureUrl", sender.getProfilePictureUrl() != null ? sender.getProfilePictureUrl() : "");
-            String receiverMessage = "Vous avez accepté la demande d'ami de " + sender.getFirstName() + " " + sender.getLastName();
-            chatWebSocketHandler.sendNotification(receiver.getId(), "friend_request_accepted", receiverMessage, notificationData);
-            persistNotification(receiver.getId(), "friend_request_accepted", receiverMessage, notificationData);
+            notificationData.put(NotificationRenderer.VARIANT_PARAM, NotificationRenderer.SELF_VARIANT);
+            notificationService.notifyUser(receiver.getId(), "friend_request_accepted", sender.getId(), notificationData);
 
             System.out.println("📢 Notifications envoyées et persistantées pour acceptFriendRequest (requestId: " + requestId + ")");
-        } catch (IOException e) {
+        } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi des notifications pour acceptFriendRequest : " + e.getMessage());
         }
 
@@ -224,30 +195,18 @@ public class FriendRequestService {
             senderNotificationData.put("requestId", requestId);
             senderNotificationData.put("fromUserId", receiver.getId());
             senderNotificationData.put("toUserId", sender.getId()); // Ajout de toUserId
-            senderNotificationData.put("firstName", receiver.getFirstName());
-            senderNotificationData.put("lastName", receiver.getLastName());
-            senderNotificationData.put("email", receiver.getEmail());
-            senderNotificationData.put("profilePictureUrl", receiver.getProfilePictureUrl() != null ? receiver.getProfilePictureUrl() : "");
-
-            String senderMessage = "Votre demande d'ami a été refusée par " + receiver.getFirstName() + " " + receiver.getLastName();
-            chatWebSocketHandler.sendNotification(sender.getId(), "friend_request_rejected", senderMessage, senderNotificationData);
-            persistNotification(sender.getId(), "friend_request_rejected", senderMessage, senderNotificationData);
+            notificationService.notifyUser(sender.getId(), "friend_request_rejected", receiver.getId(), senderNotificationData);
 
             // Notification pour le receiver
             Map<String, String> receiverNotificationData = new HashMap<>();
             receiverNotificationData.put("requestId", requestId);
             receiverNotificationData.put("fromUserId", sender.getId());
             receiverNotificationData.put("toUserId", receiver.getId()); // Ajout de toUserId
-            receiverNotificationData.put("firstName", sender.getFirstName());
-            receiverNotificationData.put("lastName", sender.getLastName());
-            receiverNotificationData.put("email", sender.getEmail());
-            receiverNotificationData.put("profilePictureUrl", sender.getProfilePictureUrl() != null ? sender.getProfilePictureUrl() : "");
-            String receiverMessage = "Vous avez refusé la demande d'ami de " + sender.getFirstName() + " " + sender.getLastName();
-            chatWebSocketHandler.sendNotification(receiver.getId(), "friend_request_rejected", receiverMessage, receiverNotificationData);
-            persistNotification(receiver.getId(), "friend_request_rejected", receiverMessage, receiverNotificationData);
+            receiverNotificationData.put(NotificationRenderer.VARIANT_PARAM, NotificationRenderer.SELF_VARIANT);
+            notificationService.notifyUser(receiver.getId(), "friend_request_rejected", sender.getId(), receiverNotificationData);
 
             System.out.println("📢 Notifications envoyées et persistantées pour rejectFriendRequest (requestId: " + requestId + ")");
-        } catch (IOException e) {
+        } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi des notifications pour rejectFriendRequest : " + e.getMessage());
         }
 
@@ -307,30 +266,18 @@ public class FriendRequestService {
             senderNotificationData.put("requestId", requestId);
             senderNotificationData.put("fromUserId", sender.getId());
             senderNotificationData.put("toUserId", receiver.getId()); // Ajout de toUserId
-            senderNotificationData.put("firstName", sender.getFirstName());
-            senderNotificationData.put("lastName", sender.getLastName());
-            senderNotificationData.put("email", sender.getEmail());
-            senderNotificationData.put("profilePictureUrl", sender.getProfilePictureUrl() != null ? sender.getProfilePictureUrl() : "");
-
-            String senderMessage = "Vous avez annulé votre demande d'ami envers " + receiver.getFirstName() + " " + receiver.getLastName();
-            chatWebSocketHandler.sendNotification(sender.getId(), "friend_request_canceled", senderMessage, senderNotificationData);
-            persistNotification(sender.getId(), "friend_request_canceled", senderMessage, senderNotificationData);
+            senderNotificationData.put(NotificationRenderer.VARIANT_PARAM, NotificationRenderer.SELF_VARIANT);
+            notificationService.notifyUser(sender.getId(), "friend_request_canceled", receiver.getId(), senderNotificationData);
 
             // Notification pour le receiver
             Map<String, String> receiverNotificationData = new HashMap<>();
             receiverNotificationData.put("requestId", requestId);
             receiverNotificationData.put("fromUserId", sender.getId()); // Corriger ici : fromUserId doit être sender
             receiverNotificationData.put("toUserId", receiver.getId()); // Ajout de toUserId
-            receiverNotificationData.put("firstName", sender.getFirstName());
-            receiverNotificationData.put("lastName", sender.getLastName());
-            receiverNotificationData.put("email", sender.getEmail());
-            receiverNotificationData.put("profilePictureUrl", sender.getProfilePictureUrl() != null ? sender.getProfilePictureUrl() : "");
-            String receiverMessage = sender.getFirstName() + " " + sender.getLastName() + " a annulé sa demande d’ami.";
-            chatWebSocketHandler.sendNotification(receiver.getId(), "friend_request_canceled", receiverMessage, receiverNotificationData);
-            persistNotification(receiver.getId(), "friend_request_canceled", receiverMessage, receiverNotificationData);
+            notificationService.notifyUser(receiver.getId(), "friend_request_canceled", sender.getId(), receiverNotificationData);
 
             System.out.println("📢 Notifications envoyées et persistantées pour cancelFriendRequest (requestId: " + requestId + ")");
-        } catch (IOException e) {
+        } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi des notifications pour cancelFriendRequest : " + e.getMessage());
         }
 
@@ -375,27 +322,16 @@ public class FriendRequestService {
             Map<String, String> notificationData = new HashMap<>();
             notificationData.put("friendId", friendId);
             notificationData.put("fromUserId", user.getId());
-            notificationData.put("firstName", user.getFirstName());
-            notificationData.put("lastName", user.getLastName());
-            notificationData.put("email", user.getEmail());
-            notificationData.put("profilePictureUrl", user.getProfilePictureUrl() != null ? user.getProfilePictureUrl() : "");
-
-            String messageToUser = "Vous avez supprimé " + friend.getFirstName() + " " + friend.getLastName() + " de votre liste d'amis.";
-            chatWebSocketHandler.sendNotification(userId, "friend_removed", messageToUser, notificationData);
-            persistNotification(userId, "friend_removed", messageToUser, notificationData);
+            notificationData.put(NotificationRenderer.VARIANT_PARAM, NotificationRenderer.SELF_VARIANT);
+            notificationService.notifyUser(userId, "friend_removed", friendId, notificationData);
 
             notificationData.put("friendId", userId);
             notificationData.put("fromUserId", friend.getId());
-            notificationData.put("firstName", friend.getFirstName());
-            notificationData.put("lastName", friend.getLastName());
-            notificationData.put("email", friend.getEmail());
-            notificationData.put("profilePictureUrl", friend.getProfilePictureUrl() != null ? friend.getProfilePictureUrl() : "");
-            String messageToFriend = user.getFirstName() + " " + user.getLastName() + " vous a supprimé de sa liste d'amis.";
-            chatWebSocketHandler.sendNotification(friendId, "friend_removed", messageToFriend, notificationData);
-            persistNotification(friendId, "friend_removed", messageToFriend, notificationData);
+            notificationData.remove(NotificationRenderer.VARIANT_PARAM);
+            notificationService.notifyUser(friendId, "friend_removed", userId, notificationData);
 
             System.out.println("📢 Notifications envoyées et persistantées pour removeFriend (userId: " + userId + ", friendId: " + friendId + ")");
-        } catch (IOException e) {
+        } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi des notifications pour removeFriend : " + e.getMessage());
         }
     }
@@ -445,22 +381,4 @@ public class FriendRequestService {
                 .updatedAt(friendRequest.getUpdatedAt())
                 .build();
     }
-
-    private void persistNotification(String userId, String notificationType, String message, Map<String, String> data) {
-        try {
-            Notification notification = Notification.builder()
-                    .id(UUID.randomUUID().toString())
-                    .userId(userId)
-                    .type(notificationType)
-                    .message(message)
-                    .timestamp(Instant.now())
-                    .isRead(false)
-                    .data(data != null ? data : new HashMap<>())
-                    .build();
-            notificationRepository.save(notification);
-            System.out.println("💾 Notification persistantée pour " + userId + ": " + message);
-        } catch (Exception e) {
-            System.err.println("❌ Erreur lors de la persistance de la notification pour " + userId + ": " + e.getMessage());
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.ChatClusterBus;
+import com.Portbil.portfolio_backend.entity.ChatSummary;
+import com.Portbil.portfolio_backend.entity.Group;
+import com.Portbil.portfolio_backend.entity.User;
+import com.Portbil.portfolio_backend.repository.ConversationRepository;
+import com.Portbil.portfolio_backend.repository.GroupRepository;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import com.Portbil.portfolio_backend.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Appartenance aux groupes de chat : la collection groups fait foi, un index mémoire groupId → membres
+ * la reflète pour qu'un message de groupe ne coûte que O(membres du groupe).
+ * L'index est chargé à la demande (hors verrou, un groupe inconnu n'est pas mis en cache), borné en LRU par
+ * app.chat.group-cache-size et mis à jour à chaque ajout ; il survit aux déconnexions.
+ * Les autres nœuds du cluster invalident leur copie via le {@link ChatClusterBus} et la rechargent au prochain accès.
+ * Un id de conversation privée n'est jamais un groupe : ni repli sur les chatIds des utilisateurs, ni invitation.
+ */
+@Service
+public class GroupMembershipService {
+
+    private final GroupRepository groupRepository;
+    private final UserRepository userRepository;
+    // Lus directement plutôt que via ConversationService, qui dépend de ce service
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ChatClusterBus chatClusterBus;
+
+    // groupId → membres, les moins récemment utilisés sont évincés au-delà de la limite
+    private final Map<String, Set<String>> membersByGroup;
+
+    public GroupMembershipService(
+            GroupRepository groupRepository,
+            UserRepository userRepository,
+            ConversationRepository conversationRepository,
+            MessageRepository messageRepository,
+            MongoTemplate mongoTemplate,
+            ChatClusterBus chatClusterBus,
+            @Value("${app.chat.group-cache-size:10000}") int cacheSize) {
+        this.groupRepository = groupRepository;
+        this.userRepository = userRepository;
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.chatClusterBus = chatClusterBus;
+        this.membersByGroup = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void subscribeToClusterInvalidations() {
+        chatClusterBus.subscribe(ChatClusterBus.GROUP_MEMBERSHIP_TOPIC, (userIds, groupId) -> membersByGroup.remove(groupId));
+    }
+
+    public Set<String> getMembers(String groupId) {
+        return Collections.unmodifiableSet(members(groupId));
+    }
+
+    public boolean isMember(String groupId, String userId) {
+        return members(groupId).contains(userId);
+    }
+
+    public boolean exists(String groupId) {
+        return !members(groupId).isEmpty();
+    }
+
+    // Conversation privée : clé de paire "min:max", chatId du registre, ou conversation antérieure au registre
+    // reconnue à ses messages privés
+    public boolean isPrivateChat(String chatId) {
+        return chatId.indexOf(':') >= 0
+                || conversationRepository.existsById(chatId)
+                || messageRepository.existsByChatIdAndType(chatId, "private");
+    }
+
+    // Ajoute un membre (crée le groupe au besoin) et le chatId correspondant à l'utilisateur
+    public void addMember(String groupId, String userId, String invitedBy) {
+        Set<String> members = members(groupId);
+        if (members.isEmpty() && isPrivateChat(groupId)) {
+            throw new IllegalArgumentException("Une conversation privée ne peut pas devenir un groupe");
+        }
+        Instant now = Instant.now();
+        Update update = new Update()
+                // Les membres déjà connus (dont ceux d'un groupe antérieur à la collection) sont persistés au passage
+                .addToSet("memberIds").each(concat(members, userId))
+                .setOnInsert("ownerId", invitedBy)
+                .setOnInsert("createdAt", now)
+                .set("updatedAt", now);
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(groupId)), update, Group.class);
+        userRepository.findAndAddChatIdById(userId, groupId);
+        // Le groupe apparaît dans la boîte de réception du nouveau membre s'il a déjà des messages
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(groupId)),
+                new Update().addToSet("participantIds", userId), ChatSummary.class);
+        members.add(userId);
+        Set<String> cached = membersByGroup.putIfAbsent(groupId, members);
+        if (cached != null && cached != members) {
+            cached.add(userId);
+        }
+        chatClusterBus.publish(ChatClusterBus.GROUP_MEMBERSHIP_TOPIC, List.of(userId), groupId);
+    }
+
+    // Lecture MongoDB hors du verrou de la map ; un groupe sans membres (id inconnu) n'est pas gardé en cache
+    private Set<String> members(String groupId) {
+        Set<String> members = membersByGroup.get(groupId);
+        if (members != null) {
+            return members;
+        }
+        Set<String> loaded = loadMembers(groupId);
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+        Set<String> cached = membersByGroup.putIfAbsent(groupId, loaded);
+        return cached != null ? cached : loaded;
+    }
+
+    private Set<String> loadMembers(String groupId) {
+        Set<String> members = ConcurrentHashMap.newKeySet();
+        groupRepository.findById(groupId).ifPresentOrElse(
+                group -> members.addAll(group.getMemberIds()),
+                // Groupe créé avant la collection groups : les membres sont ceux qui portent le chatId. Les chatIds
+                // privés sont aussi dans User.chatIds : leurs deux participants ne forment pas un groupe
+                () -> {
+                    if (!isPrivateChat(groupId)) {
+                        userRepository.findIdsByChatId(groupId).stream().map(User::getId).forEach(members::add);
+                    }
+                });
+        return members;
+    }
+
+    private Object[] concat(Set<String> members, String userId) {
+        List<Object> values = new ArrayList<>(members);
+        values.add(userId);
+        return values.toArray();
+    }
+}
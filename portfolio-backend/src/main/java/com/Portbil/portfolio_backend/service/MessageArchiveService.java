@@ -0,0 +1,276 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.entity.MessageArchiveChunk;
+import com.Portbil.portfolio_backend.repository.MessageArchiveChunkRepository;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archivage par paliers : les messages plus anciens que app.chat.archive.max-age-days quittent la collection
+ * messages pour des tranches compressées (jusqu'à chunk-size messages par document, par conversation).
+ * Chaque passage complète d'abord la dernière tranche de la conversation avant d'en ouvrir une nouvelle :
+ * un archivage horaire ne produit pas une multitude de petites tranches.
+ * La collection chaude et son index restent bornés ; {@link ChatHistoryService} lit l'archive
+ * quand une page dépasse le palier chaud, toujours plus récent que l'archive pour une même conversation.
+ */
+@Service
+public class MessageArchiveService {
+
+    private static final Sort OLDEST_FIRST = Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "id"));
+    private static final Duration OBJECT_ID_PRECISION = Duration.ofSeconds(1);
+
+    private final MessageRepository messageRepository;
+    private final MessageArchiveChunkRepository messageArchiveChunkRepository;
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int chunkSize;
+    private final ObjectWriter chunkWriter;
+    private final ObjectReader chunkReader;
+
+    public MessageArchiveService(
+            MessageRepository messageRepository,
+            MessageArchiveChunkRepository messageArchiveChunkRepository,
+            MongoTemplate mongoTemplate,
+            @Value("${app.chat.archive.enabled:true}") boolean enabled,
+            @Value("${app.chat.archive.max-age-days:90}") long maxAgeDays,
+            @Value("${app.chat.archive.chunk-size:500}") int chunkSize) {
+        this.messageRepository = messageRepository;
+        this.messageArchiveChunkRepository = messageArchiveChunkRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.maxAge = Duration.ofDays(maxAgeDays);
+        this.chunkSize = chunkSize;
+        JsonMapper mapper = JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        TypeReference<List<Message>> messageList = new TypeReference<>() {
+        };
+        this.chunkWriter = mapper.writerFor(messageList);
+        this.chunkReader = mapper.readerFor(messageList);
+    }
+
+    // Plusieurs nœuds peuvent archiver en même temps : mêmes tranches, même _id, suppressions idempotentes
+    @Scheduled(initialDelayString = "${app.chat.archive.initial-delay-ms:60000}", fixedDelayString = "${app.chat.archive.interval-ms:3600000}")
+    public void archiveOldMessages() {
+        if (!enabled) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(maxAge);
+        List<String> chatIds = mongoTemplate.findDistinct(
+                Query.query(Criteria.where("timestamp").lt(cutoff)), "chatId", Message.class, String.class);
+        int archived = 0;
+        for (String chatId : chatIds) {
+            try {
+                archived += archiveChat(chatId, cutoff);
+            } catch (Exception e) {
+                System.err.println("❌ Erreur lors de l'archivage de la conversation " + chatId + ": " + e.getMessage());
+            }
+        }
+        if (archived > 0) {
+            System.out.println("🗄️ " + archived + " message(s) archivé(s) dans " + chatIds.size() + " conversation(s)");
+        }
+    }
+
+    // Messages archivés strictement avant (timestamp, messageId), du plus récent au plus ancien ; timestamp null = depuis la fin
+    public List<Message> readBefore(String chatId, Instant timestamp, String messageId, int limit) {
+        Criteria criteria = Criteria.where("chatId").is(chatId);
+        if (timestamp != null) {
+            criteria = criteria.and("firstTimestamp").lte(timestamp);
+        }
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.DESC, "firstTimestamp"));
+        List<Message> result = new ArrayList<>(limit);
+        try (Stream<MessageArchiveChunk> stream = mongoTemplate.stream(query, MessageArchiveChunk.class)) {
+            Iterator<MessageArchiveChunk> chunks = stream.iterator();
+            while (chunks.hasNext() && result.size() < limit) {
+                List<Message> messages = decode(chunks.next().getPayload());
+                for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    Message message = messages.get(i);
+                    if (timestamp == null || compare(message, timestamp, messageId) < 0) {
+                        result.add(message);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Messages archivés strictement après (timestamp, messageId), dans l'ordre chronologique
+    public List<Message> readAfter(String chatId, Instant timestamp, String messageId, int limit) {
+        Query query = Query.query(Criteria.where("chatId").is(chatId).and("lastTimestamp").gte(timestamp))
+                .with(Sort.by(Sort.Direction.ASC, "firstTimestamp"));
+        List<Message> result = new ArrayList<>(limit);
+        try (Stream<MessageArchiveChunk> stream = mongoTemplate.stream(query, MessageArchiveChunk.class)) {
+            Iterator<MessageArchiveChunk> chunks = stream.iterator();
+            while (chunks.hasNext() && result.size() < limit) {
+                for (Message message : decode(chunks.next().getPayload())) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    if (compare(message, timestamp, messageId) > 0) {
+                        result.add(message);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Recherche d'un message archivé (curseur de pagination) ; un id ObjectId restreint aux tranches de sa seconde
+    public Optional<Message> findMessage(String chatId, String messageId) {
+        return Optional.ofNullable(findMessages(chatId, List.of(messageId)).get(messageId));
+    }
+
+    // Plusieurs messages archivés d'une conversation : chaque tranche candidate n'est décompressée qu'une fois.
+    // Des ids ObjectId restreignent la lecture aux tranches couvrant leur plage de création
+    public Map<String, Message> findMessages(String chatId, Collection<String> messageIds) {
+        Set<String> wanted = new HashSet<>(messageIds);
+        Map<String, Message> found = new HashMap<>();
+        if (wanted.isEmpty()) {
+            return found;
+        }
+        Criteria criteria = Criteria.where("chatId").is(chatId);
+        if (wanted.stream().allMatch(ObjectId::isValid)) {
+            Instant oldest = null;
+            Instant newest = null;
+            for (String messageId : wanted) {
+                Instant created = new ObjectId(messageId).getDate().toInstant();
+                oldest = oldest == null || created.isBefore(oldest) ? created : oldest;
+                newest = newest == null || created.isAfter(newest) ? created : newest;
+            }
+            criteria = criteria.and("firstTimestamp").lte(newest.plus(OBJECT_ID_PRECISION))
+                    .and("lastTimestamp").gte(oldest.minus(OBJECT_ID_PRECISION));
+        }
+        try (Stream<MessageArchiveChunk> stream = mongoTemplate.stream(Query.query(criteria), MessageArchiveChunk.class)) {
+            Iterator<MessageArchiveChunk> chunks = stream.iterator();
+            while (chunks.hasNext() && found.size() < wanted.size()) {
+                for (Message message : decode(chunks.next().getPayload())) {
+                    if (wanted.contains(message.getId())) {
+                        found.put(message.getId(), message);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Parcours complet de l'archive, tranche par tranche (reconstruction d'index)
+    public void forEachArchivedMessage(Consumer<Message> action) {
+        try (Stream<MessageArchiveChunk> stream = mongoTemplate.stream(new Query(), MessageArchiveChunk.class)) {
+            Iterator<MessageArchiveChunk> chunks = stream.iterator();
+            while (chunks.hasNext()) {
+                decode(chunks.next().getPayload()).forEach(action);
+            }
+        }
+    }
+
+    private int archiveChat(String chatId, Instant cutoff) {
+        int archived = 0;
+        MessageArchiveChunk tail = openTail(chatId);
+        while (true) {
+            int room = tail != null ? chunkSize - tail.getCount() : chunkSize;
+            List<Message> batch = messageRepository.findPageBeforeTimestamp(chatId, cutoff, PageRequest.of(0, room, OLDEST_FIRST));
+            if (batch.isEmpty()) {
+                return archived;
+            }
+            List<Message> messages = tail != null ? new ArrayList<>(decode(tail.getPayload())) : new ArrayList<>(batch.size());
+            for (Message message : batch) {
+                // Déjà dans la tranche si un passage précédent s'est arrêté entre l'écriture et la suppression
+                if (tail == null || compare(message, tail.getLastTimestamp(), tail.getLastMessageId()) > 0) {
+                    messages.add(message);
+                }
+            }
+            Message first = messages.get(0);
+            Message last = messages.get(messages.size() - 1);
+            // Tranche écrite avant la suppression : un arrêt entre les deux ne perd rien, le prochain passage réécrit la même tranche
+            MessageArchiveChunk chunk = messageArchiveChunkRepository.save(MessageArchiveChunk.builder()
+                    .id(tail != null ? tail.getId() : chatId + ":" + first.getId())
+                    .chatId(chatId)
+                    .firstTimestamp(first.getTimestamp())
+                    .lastTimestamp(last.getTimestamp())
+                    .firstMessageId(first.getId())
+                    .lastMessageId(last.getId())
+                    .count(messages.size())
+                    .payload(encode(messages))
+                    .archivedAt(Instant.now())
+                    .build());
+            messageRepository.deleteAllById(batch.stream().map(Message::getId).toList());
+            archived += batch.size();
+            if (batch.size() < room) {
+                return archived;
+            }
+            tail = chunk.getCount() < chunkSize ? chunk : null;
+        }
+    }
+
+    // Dernière tranche de la conversation si elle n'est pas pleine : les messages archivés sont toujours plus récents
+    private MessageArchiveChunk openTail(String chatId) {
+        Query query = Query.query(Criteria.where("chatId").is(chatId))
+                .with(Sort.by(Sort.Direction.DESC, "firstTimestamp"))
+                .limit(1);
+        MessageArchiveChunk tail = mongoTemplate.findOne(query, MessageArchiveChunk.class);
+        return tail != null && tail.getCount() < chunkSize ? tail : null;
+    }
+
+    private byte[] encode(List<Message> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            chunkWriter.writeValue(gzip, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<Message> decode(byte[] payload) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return chunkReader.readValue(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int compare(Message message, Instant timestamp, String messageId) {
+        int byTimestamp = message.getTimestamp().compareTo(timestamp);
+        if (byTimestamp != 0 || messageId == null) {
+            return byTimestamp;
+        }
+        return message.getId().compareTo(messageId);
+    }
+}
@@ -0,0 +1,14 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.entity.Message;
+
+import java.util.List;
+
+/**
+ * Appelé par {@link ChatPersistenceBuffer} sur son thread d'écriture, après chaque lot de messages inséré.
+ * Les vues dérivées (compteurs de non-lus, etc.) sont ainsi mises à jour une fois par lot, jamais sur le chemin d'envoi.
+ */
+public interface MessagePersistListener {
+
+    void onMessagesPersisted(List<Message> messages);
+}
@@ -0,0 +1,206 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.NotificationProperties;
+import com.Portbil.portfolio_backend.entity.Notification;
+import com.Portbil.portfolio_backend.entity.User;
+import com.Portbil.portfolio_backend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Service;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rendu des notifications à la lecture. Une notification stockée ne porte que son type, l'id de son auteur et
+ * quelques paramètres (ids) : le texte vient de la clé notification.&lt;type&gt;[.&lt;variante&gt;] du MessageSource dans la
+ * langue du lecteur, et le profil de l'auteur (nom, photo) est chargé en une seule requête pour toute une page.
+ * Les motifs sont analysés une fois par langue et par clé ; les profils récents sont gardés quelques secondes
+ * pour que l'envoi en temps réel d'une rafale de messages ne relise pas l'auteur à chaque fois.
+ * Arguments des motifs : {0} = nom de l'auteur, puis les paramètres listés dans app.notifications.types.*.text-params.
+ * Les champs de profil des données (firstName, lastName, profilePictureUrl, email) décrivent toujours l'utilisateur
+ * params.fromUserId quand il est présent, comme le lit portfolio-frontend ; sinon l'auteur.
+ */
+@Service
+public class NotificationRenderer {
+
+    // Paramètre optionnel choisissant une variante du texte (ex. "self" : le destinataire est l'auteur de l'action)
+    public static final String VARIANT_PARAM = "variant";
+    public static final String SELF_VARIANT = "self";
+    // Utilisateur décrit par les champs de profil des données (ex. l'initiateur d'une demande d'ami envoyée)
+    public static final String PROFILE_PARAM = "fromUserId";
+
+    private static final String KEY_PREFIX = "notification.";
+    private static final String OTHERS_KEY = "notification.others";
+    private static final String REPEATED_KEY = "notification.repeated";
+    private static final String UNKNOWN_ACTOR_KEY = "notification.actor.unknown";
+
+    // Clé absente du MessageSource : mise en cache aussi, pour ne pas la rechercher à chaque rendu
+    private static final Optional<MessageFormat> MISSING = Optional.empty();
+
+    private final MessageSource messageSource;
+    private final UserRepository userRepository;
+    private final NotificationProperties notificationProperties;
+    private final Locale defaultLocale;
+    private final long actorCacheTtlMs;
+
+    // "<langue>|<clé>" → motif analysé ; MessageFormat n'est pas thread-safe, format() se fait sous son verrou
+    private final Map<String, Optional<MessageFormat>> formats = new ConcurrentHashMap<>();
+    private final Map<String, CachedActor> recentActors;
+
+    public NotificationRenderer(
+            MessageSource messageSource,
+            UserRepository userRepository,
+            NotificationProperties notificationProperties,
+            @Value("${app.notifications.default-locale:fr}") String defaultLocale,
+            @Value("${app.notifications.actor-cache-size:10000}") int actorCacheSize,
+            @Value("${app.notifications.actor-cache-ttl-ms:30000}") long actorCacheTtlMs) {
+        this.messageSource = messageSource;
+        this.userRepository = userRepository;
+        this.notificationProperties = notificationProperties;
+        this.defaultLocale = Locale.forLanguageTag(defaultLocale);
+        this.actorCacheTtlMs = actorCacheTtlMs;
+        this.recentActors = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedActor> eldest) {
+                return size() > actorCacheSize;
+            }
+        });
+    }
+
+    // Langue des trames poussées en temps réel : une seule trame sérialisée est partagée par tous les destinataires
+    public Locale defaultLocale() {
+        return defaultLocale;
+    }
+
+    // Profils des auteurs et des utilisateurs fromUserId d'une page de notifications, en une seule requête projetée
+    // pour ceux absents du cache
+    public Map<String, ActorProfile> profiles(Collection<Notification> notifications) {
+        Map<String, ActorProfile> actors = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Notification notification : notifications) {
+            String profileId = notification.getParams() != null ? notification.getParams().get(PROFILE_PARAM) : null;
+            for (String userId : new String[]{notification.getActorId(), profileId}) {
+                if (userId == null || actors.containsKey(userId) || missing.contains(userId)) {
+                    continue;
+                }
+                CachedActor cached = recentActors.get(userId);
+                if (cached != null && cached.expiresAt() > now) {
+                    actors.put(userId, cached.profile());
+                } else {
+                    missing.add(userId);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (User user : userRepository.findProfilesByIdIn(missing)) {
+                ActorProfile profile = new ActorProfile(user.getId(), user.getFirstName(), user.getLastName(),
+                        user.getEmail(), user.getProfilePictureUrl());
+                actors.put(user.getId(), profile);
+                recentActors.put(user.getId(), new CachedActor(profile, now + actorCacheTtlMs));
+            }
+        }
+        return actors;
+    }
+
+    // Texte dans la langue demandée, complété du nombre d'autres auteurs ou d'événements pour une entrée regroupée
+    public String message(Notification notification, Map<String, ActorProfile> profiles, Locale locale) {
+        ActorProfile actor = notification.getActorId() != null ? profiles.get(notification.getActorId()) : null;
+        String text;
+        if (notification.getActorId() == null && notification.getParams() == null && notification.getMessage() != null) {
+            text = notification.getMessage(); // Notification enregistrée avant le rendu différé : texte figé
+        } else {
+            Map<String, String> params = notification.getParams() != null ? notification.getParams() : Map.of();
+            String variant = params.get(VARIANT_PARAM);
+            Optional<MessageFormat> format = variant != null
+                    ? format(KEY_PREFIX + notification.getType() + "." + variant, locale).or(() -> format(KEY_PREFIX + notification.getType(), locale))
+                    : format(KEY_PREFIX + notification.getType(), locale);
+            text = format.map(f -> format(f, arguments(notification.getType(), params, actor, locale)))
+                    .orElse(notification.getType());
+        }
+
+        int actorCount = notification.getActorIds() != null ? notification.getActorIds().size() : 0;
+        int count = notification.getCount() != null ? notification.getCount() : 1;
+        if (actorCount > 1) {
+            return format(OTHERS_KEY, locale).map(f -> text + " " + format(f, new Object[]{actorCount - 1})).orElse(text);
+        }
+        if (count > 1) {
+            return format(REPEATED_KEY, locale).map(f -> text + " " + format(f, new Object[]{count})).orElse(text);
+        }
+        return text;
+    }
+
+    // Données transmises au client : paramètres stockés et profil de fromUserId (à défaut de l'auteur), aplatis comme
+    // le lit le frontend
+    public Map<String, String> data(Notification notification, Map<String, ActorProfile> profiles) {
+        if (notification.getActorId() == null && notification.getParams() == null) {
+            return notification.getData();
+        }
+        Map<String, String> data = new HashMap<>();
+        if (notification.getParams() != null) {
+            data.putAll(notification.getParams());
+        }
+        String profileId = data.getOrDefault(PROFILE_PARAM, notification.getActorId());
+        ActorProfile actor = profileId != null ? profiles.get(profileId) : null;
+        if (actor != null) {
+            data.put("firstName", actor.firstName() != null ? actor.firstName() : "");
+            data.put("lastName", actor.lastName() != null ? actor.lastName() : "");
+            data.put("profilePictureUrl", actor.profilePictureUrl() != null ? actor.profilePictureUrl() : "");
+            NotificationProperties.TypePolicy policy = notificationProperties.policy(notification.getType());
+            if (policy != null && policy.isActorEmail() && actor.email() != null) {
+                data.put("email", actor.email());
+            }
+        }
+        return data;
+    }
+
+    private Object[] arguments(String type, Map<String, String> params, ActorProfile actor, Locale locale) {
+        NotificationProperties.TypePolicy policy = notificationProperties.policy(type);
+        List<String> textParams = policy != null ? policy.getTextParams() : List.of();
+        List<Object> arguments = new ArrayList<>(textParams.size() + 1);
+        arguments.add(actor != null && !actor.displayName().isEmpty()
+                ? actor.displayName()
+                : format(UNKNOWN_ACTOR_KEY, locale).map(f -> format(f, new Object[0])).orElse(""));
+        for (String param : textParams) {
+            arguments.add(params.getOrDefault(param, ""));
+        }
+        return arguments.toArray();
+    }
+
+    // Seule la langue compte : fr, fr-FR et fr-CA partagent les mêmes motifs
+    private Optional<MessageFormat> format(String key, Locale locale) {
+        Locale language = Locale.of(locale.getLanguage());
+        return formats.computeIfAbsent(language.getLanguage() + "|" + key, cacheKey -> {
+            String pattern = messageSource.getMessage(key, null, null, language);
+            return pattern != null ? Optional.of(new MessageFormat(pattern, language)) : MISSING;
+        });
+    }
+
+    private static String format(MessageFormat format, Object[] arguments) {
+        synchronized (format) {
+            return format.format(arguments);
+        }
+    }
+
+    public record ActorProfile(String id, String firstName, String lastName, String email, String profilePictureUrl) {
+
+        String displayName() {
+            return ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        }
+    }
+
+    private record CachedActor(ActorProfile profile, long expiresAt) {
+    }
+}
@@ -1,55 +1,471 @@
 package com.Portbil.portfolio_backend.service;
 
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.config.NotificationProperties;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
 import com.Portbil.portfolio_backend.dto.NotificationDTO;
 import com.Portbil.portfolio_backend.entity.Notification;
 import com.Portbil.portfolio_backend.repository.NotificationRepository;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Notifications persistées. {@link #notifyUser} est le chemin d'écriture commun (chat, amis, likes) :
+ * une notification simple part dans le tampon d'écriture différée, une notification d'un type regroupé
+ * (app.notifications.types.*.aggregation-window) est fusionnée en mémoire puis écrite en upsert $inc / $addToSet
+ * sur l'entrée de sa fenêtre, dont l'id est déterministe. Le premier événement d'une fenêtre est écrit aussitôt,
+ * pour que l'id poussé en temps réel existe ; un événement ne rend l'entrée non lue que s'il est postérieur à sa
+ * dernière lecture (readAt). Chaque entrée porte une date d'expiration (index TTL)
+ * selon la conservation de son type.
+ * Seuls le type, l'auteur et les paramètres sont stockés ; le texte est rendu à la lecture par {@link NotificationRenderer}.
+ */
 @Service
 public class NotificationService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "timestamp").and(Sort.by(Sort.Direction.DESC, "id"));
+    private static final Sort OLDEST_FIRST = Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "id"));
+    private static final List<Boolean> UNREAD_ONLY = List.of(false);
+    private static final List<Boolean> ALL_STATES = List.of(false, true);
+    // Entrées regroupées déjà écrites par ce nœud : leurs événements suivants attendent le flush
+    private static final int WRITTEN_AGGREGATES_CACHE_SIZE = 10000;
+
     @Autowired
     private NotificationRepository notificationRepository;
 
-    public List<NotificationDTO> getNotificationsByUserId(String userId) {
-        return notificationRepository.findByUserId(userId).stream()
-                .map(this::mapToDTO)
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ChatPersistenceBuffer chatPersistenceBuffer;
+
+    @Autowired
+    private NotificationProperties notificationProperties;
+
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+
+    @Autowired
+    private ChatFrameCodec chatFrameCodec;
+
+    @Autowired
+    private NotificationRenderer notificationRenderer;
+
+    // Recul du rejeu SSE : une notification poussée avant celle de Last-Event-ID peut être écrite après elle
+    // (tampon d'écriture différée, regroupements, autre nœud) ; doit dépasser ces intervalles de flush
+    @Value("${app.notifications.stream.replay-lag-ms:5000}")
+    private long replayLagMs;
+
+    // Regroupements en attente d'écriture, par id d'entrée
+    private final Map<String, PendingAggregate> pendingAggregates = new ConcurrentHashMap<>();
+
+    private final Map<String, Boolean> writtenAggregates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > WRITTEN_AGGREGATES_CACHE_SIZE;
+        }
+    });
+
+    // Persiste puis pousse (WebSocket et SSE) la même notification : même id, même timestamp que la ligne stockée.
+    // actorId = utilisateur nommé dans le texte ; params = ids utiles au client (chatId, requestId…), sans texte ni profil
+    public Notification notifyUser(String userId, String notificationType, String actorId, Map<String, String> params) {
+        Notification notification = persistNotification(userId, notificationType, actorId, params, now());
+        push(Map.of(userId, NotificationStreamService.eventId(notification.getTimestamp(), notification.getId())), notification, true);
+        return notification;
+    }
+
+    // Même notification pour plusieurs utilisateurs : une ligne chacun, une seule trame sérialisée partagée (sans id)
+    public void notifyUsers(Collection<String> userIds, String notificationType, String actorId, Map<String, String> params) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Instant now = now();
+        Notification notification = null;
+        Map<String, String> eventIds = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            notification = persistNotification(userId, notificationType, actorId, params, now);
+            eventIds.put(userId, NotificationStreamService.eventId(now, notification.getId()));
+        }
+        push(eventIds, notification, false);
+    }
+
+    // Flux SSE ; lastEventId (en-tête Last-Event-ID) = id de la dernière notification reçue ("<timestamp ms>-<id>")
+    public SseEmitter openStream(String userId, String lastEventId) {
+        Instant since = NotificationStreamService.eventTimestamp(lastEventId);
+        return notificationStreamService.open(userId, () -> since == null
+                ? List.of()
+                : missedEvents(userId, since.minusMillis(replayLagMs), lastEventId.trim()));
+    }
+
+    // Renvoie la notification telle qu'elle est (ou sera) stockée ; pour un type regroupé, l'id est celui de l'entrée commune
+    private Notification persistNotification(String userId, String notificationType, String actorId, Map<String, String> params, Instant now) {
+        // Copie : les appelants réutilisent souvent la même map pour la notification suivante
+        Map<String, String> notificationParams = params != null ? new HashMap<>(params) : new HashMap<>();
+        Instant expiresAt = now.plus(notificationProperties.retention(notificationType));
+        NotificationProperties.TypePolicy policy = notificationProperties.policy(notificationType);
+        if (policy != null && policy.getAggregationWindow() != null) {
+            String id = aggregateId(userId, notificationType, policy, notificationParams, now);
+            if (!writeFirstEvent(id, userId, notificationType, actorId, notificationParams, now, expiresAt)) {
+                pendingAggregates.compute(id, (key, pending) -> {
+                    PendingAggregate aggregate = pending != null ? pending : new PendingAggregate(userId, notificationType);
+                    aggregate.add(actorId, notificationParams, now, expiresAt);
+                    return aggregate;
+                });
+            }
+            return Notification.builder()
+                    .id(id)
+                    .userId(userId)
+                    .type(notificationType)
+                    .actorId(actorId)
+                    .params(notificationParams)
+                    .timestamp(now)
+                    .isRead(false)
+                    .expiresAt(expiresAt)
+                    .build();
+        }
+
+        Notification notification = Notification.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(userId)
+                .type(notificationType)
+                .actorId(actorId)
+                .params(notificationParams)
+                .timestamp(now)
+                .isRead(false)
+                .expiresAt(expiresAt)
+                .build();
+        chatPersistenceBuffer.enqueue(notification);
+        return notification;
+    }
+
+    // Écrit tout de suite le premier événement d'une entrée regroupée (une fois par entrée et par nœud) : l'id poussé
+    // au client est aussitôt lisible et marquable comme lu. false si l'événement doit attendre le flush
+    private boolean writeFirstEvent(String id, String userId, String type, String actorId, Map<String, String> params,
+                                    Instant timestamp, Instant expiresAt) {
+        if (writtenAggregates.putIfAbsent(id, Boolean.TRUE) != null) {
+            return false;
+        }
+        PendingAggregate first = new PendingAggregate(userId, type);
+        first.add(actorId, params, timestamp, expiresAt);
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id)), aggregateUpdate(first), Notification.class);
+            return true;
+        } catch (Exception e) {
+            writtenAggregates.remove(id);
+            System.err.println("❌ Erreur lors de l'écriture de la notification regroupée " + id + ", reportée au flush : " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Trame temps réel rendue dans la langue par défaut : elle est partagée par les sessions WebSocket et les flux SSE.
+    // La notification est déjà dans le tampon d'écriture : un échec d'encodage ne coûte que l'envoi en direct
+    private void push(Map<String, String> eventIds, Notification notification, boolean withId) {
+        Map<String, NotificationRenderer.ActorProfile> profiles = notificationRenderer.profiles(List.of(notification));
+        try {
+            notificationStreamService.push(eventIds, chatFrameCodec.encode(new OutboundChatFrame.Notification(
+                    withId ? notification.getId() : null, notification.getType(),
+                    notificationRenderer.message(notification, profiles, notificationRenderer.defaultLocale()),
+                    notification.getTimestamp(), notificationRenderer.data(notification, profiles))));
+        } catch (IOException e) {
+            System.err.println("❌ Erreur lors de l'envoi de la notification " + notification.getId() + " : " + e.getMessage());
+        }
+    }
+
+    // Une écriture par entrée regroupée et par intervalle, quel que soit le nombre d'événements reçus
+    @Scheduled(fixedDelayString = "${app.notifications.aggregation-flush-interval-ms:1000}")
+    public void flushAggregates() {
+        if (pendingAggregates.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Notification.class);
+        int writes = 0;
+        for (String id : List.copyOf(pendingAggregates.keySet())) {
+            PendingAggregate aggregate = pendingAggregates.remove(id);
+            if (aggregate == null) {
+                continue;
+            }
+            bulk.upsert(Query.query(Criteria.where("_id").is(id)), aggregateUpdate(aggregate));
+            writes++;
+        }
+        if (writes == 0) {
+            return;
+        }
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de l'écriture des notifications regroupées : " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAggregates();
+    }
+
+    // Mise à jour en pipeline, atomique sur l'entrée : $inc du nombre, union des auteurs, et non lue seulement si
+    // l'événement le plus récent est postérieur à la dernière lecture (une lecture faite entre l'événement et
+    // l'écriture n'est pas annulée). Les valeurs fournies passent par $literal : un "$" n'y est jamais un champ
+    private static AggregationUpdate aggregateUpdate(PendingAggregate aggregate) {
+        Date timestamp = Date.from(aggregate.timestamp);
+        AggregationExpression count = context -> new Document("$add", List.of(
+                new Document("$ifNull", List.of("$count", 0)), aggregate.count));
+        AggregationExpression actorIds = context -> new Document("$setUnion", List.of(
+                new Document("$ifNull", List.of("$actorIds", List.of())),
+                new Document("$literal", new ArrayList<>(aggregate.actorIds))));
+        AggregationExpression isRead = context -> new Document("$cond", List.of(
+                new Document("$gte", List.of("$readAt", timestamp)), "$isRead", false));
+        return AggregationUpdate.update()
+                .set("count").toValue(count)
+                .set("userId").toValue(aggregate.userId)
+                .set("type").toValue(aggregate.type)
+                .set("actorId").toValue(literal(aggregate.actorId))
+                .set("params").toValue(literal(aggregate.params))
+                .set("timestamp").toValue(timestamp)
+                .set("expiresAt").toValue(Date.from(aggregate.expiresAt))
+                .set("actorIds").toValue(actorIds)
+                .set("isRead").toValue(isRead);
+    }
+
+    private static AggregationExpression literal(Object value) {
+        return context -> new Document("$literal", value);
+    }
+
+    // Lue maintenant : readAt borne les événements regroupés qui pourront de nouveau la rendre non lue
+    private static Update markRead() {
+        return new Update().set("isRead", true).set("readAt", Instant.now());
+    }
+
+    // Notifications antérieures à la rétention : expiration calculée depuis leur timestamp, une instruction par politique
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillExpiration() {
+        try {
+            long updated = 0;
+            for (Map.Entry<String, NotificationProperties.TypePolicy> entry : notificationProperties.getTypes().entrySet()) {
+                updated += setMissingExpiration(Criteria.where("type").is(entry.getKey()), notificationProperties.retention(entry.getKey()));
+            }
+            updated += setMissingExpiration(Criteria.where("type").nin(notificationProperties.getTypes().keySet()),
+                    notificationProperties.getDefaultRetention());
+            if (updated > 0) {
+                System.out.println("✅ Date d'expiration ajoutée à " + updated + " notifications existantes");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de l'initialisation de l'expiration des notifications : " + e.getMessage());
+        }
+    }
+
+    private long setMissingExpiration(Criteria typeCriteria, Duration retention) {
+        Query query = Query.query(Criteria.where("expiresAt").exists(false).andOperator(typeCriteria));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("expiresAt").toValue(ArithmeticOperators.Add.valueOf("timestamp").add(retention.toMillis()));
+        return mongoTemplate.updateMulti(query, update, Notification.class).getModifiedCount();
+    }
+
+    // Rejeu depuis since (déjà reculé du délai d'écriture) : les notifications de la fenêtre de recul déjà reçues
+    // reviennent avec le même id d'événement et sont ignorées par le client ; seule lastEventId est exclue ici
+    private List<NotificationStreamService.StreamEvent> missedEvents(String userId, Instant since, String lastEventId) {
+        List<Notification> missed = notificationRepository.findPageAfterTimestamp(userId, ALL_STATES, since,
+                PageRequest.of(0, MAX_PAGE_SIZE, OLDEST_FIRST));
+        Map<String, NotificationRenderer.ActorProfile> profiles = notificationRenderer.profiles(missed);
+        Locale locale = notificationRenderer.defaultLocale();
+        List<NotificationStreamService.StreamEvent> events = new ArrayList<>(missed.size() + 1);
+        String eventId = lastEventId;
+        for (Notification notification : missed) {
+            eventId = NotificationStreamService.eventId(notification.getTimestamp(), notification.getId());
+            if (eventId.equals(lastEventId)) {
+                continue;
+            }
+            try {
+                String payload = chatFrameCodec.encode(new OutboundChatFrame.Notification(notification.getId(), notification.getType(),
+                        notificationRenderer.message(notification, profiles, locale), notification.getTimestamp(),
+                        notificationRenderer.data(notification, profiles))).getPayload();
+                events.add(new NotificationStreamService.StreamEvent(eventId, NotificationStreamService.NOTIFICATION_EVENT, payload));
+            } catch (IOException e) {
+                System.err.println("❌ Erreur lors du rejeu de la notification " + notification.getId() + " : " + e.getMessage());
+            }
+        }
+        if (missed.size() == MAX_PAGE_SIZE) {
+            events.add(new NotificationStreamService.StreamEvent(eventId, NotificationStreamService.RESYNC_EVENT, "{}"));
+        }
+        return events;
+    }
+
+    // Précision de MongoDB : le timestamp de l'id d'événement SSE (ms) et le timestamp stocké sont identiques
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    // Fenêtres fixes : l'id de l'entrée se calcule sans lecture, deux nœuds écrivent dans la même entrée
+    private static String aggregateId(String userId, String type, NotificationProperties.TypePolicy policy,
+                                      Map<String, String> params, Instant now) {
+        String group = policy.getGroupKey() != null ? params.getOrDefault(policy.getGroupKey(), "") : "";
+        long window = now.toEpochMilli() / Math.max(1, policy.getAggregationWindow().toMillis());
+        return "agg:" + userId + ":" + type + ":" + group + ":" + window;
+    }
+
+    // Page de notifications, de la plus récente à la plus ancienne ; before = id de notification ou timestamp ISO-8601.
+    // Texte rendu dans la langue du lecteur, auteurs de toute la page chargés en une requête
+    public List<NotificationDTO> getNotifications(String userId, String before, Integer limit, boolean unreadOnly, Locale locale) {
+        List<Boolean> readStates = unreadOnly ? UNREAD_ONLY : ALL_STATES;
+        Pageable pageable = PageRequest.of(0, pageSize(limit), NEWEST_FIRST);
+        List<Notification> page;
+        if (before == null || before.isBlank()) {
+            page = notificationRepository.findPageByUserId(userId, readStates, pageable);
+        } else {
+            try {
+                page = notificationRepository.findPageBeforeTimestamp(userId, readStates, Instant.parse(before), pageable);
+            } catch (DateTimeParseException e) {
+                Notification cursor = notificationRepository.findById(before)
+                        .filter(notification -> userId.equals(notification.getUserId()))
+                        .orElseThrow(() -> new IllegalArgumentException("Curseur de pagination invalide : " + before));
+                page = notificationRepository.findPageBeforeNotification(userId, readStates, cursor.getTimestamp(), cursor.getId(), pageable);
+            }
+        }
+        Map<String, NotificationRenderer.ActorProfile> profiles = notificationRenderer.profiles(page);
+        return page.stream()
+                .map(notification -> mapToDTO(notification, profiles, locale))
                 .collect(Collectors.toList());
     }
 
-    public Optional<NotificationDTO> findById(String notificationId) {
+    public long countUnread(String userId) {
+        return notificationRepository.countUnreadByUserId(userId);
+    }
+
+    public Optional<NotificationDTO> findById(String notificationId, Locale locale) {
         return notificationRepository.findById(notificationId)
-                .map(this::mapToDTO);
+                .map(notification -> mapToDTO(notification, notificationRenderer.profiles(List.of(notification)), locale));
     }
 
-    public void markAsRead(String notificationId) {
-        Notification notification = notificationRepository.findById(notificationId)
-                .orElseThrow(() -> new IllegalArgumentException("Notification introuvable : " + notificationId));
-        notification.setIsRead(true);
-        notificationRepository.save(notification);
+    // Chaque opération d'écriture est une seule instruction dont le filtre porte userId : une notification
+    // d'un autre utilisateur n'est jamais touchée, sans lecture préalable pour vérifier la propriété
+    public void markAsRead(String userId, String notificationId) {
+        long matched = mongoTemplate.updateFirst(ownedBy(userId).addCriteria(Criteria.where("_id").is(notificationId)),
+                markRead(), Notification.class).getMatchedCount();
+        if (matched == 0) {
+            throw new IllegalArgumentException("Notification introuvable : " + notificationId);
+        }
     }
-    public void deleteNotification(String notificationId) {
-        notificationRepository.deleteById(notificationId);
+
+    public long markAsRead(String userId, Collection<String> notificationIds) {
+        return mongoTemplate.updateMulti(ownedBy(userId).addCriteria(Criteria.where("_id").in(notificationIds).and("isRead").is(false)),
+                markRead(), Notification.class).getModifiedCount();
     }
 
-    public void deleteAllNotifications(String userId) {
-        notificationRepository.deleteByUserId(userId);
+    public long markAllAsRead(String userId) {
+        return mongoTemplate.updateMulti(ownedBy(userId).addCriteria(Criteria.where("isRead").is(false)),
+                markRead(), Notification.class).getModifiedCount();
     }
 
-    private NotificationDTO mapToDTO(Notification notification) {
+    public void deleteNotification(String userId, String notificationId) {
+        long deleted = mongoTemplate.remove(ownedBy(userId).addCriteria(Criteria.where("_id").is(notificationId)),
+                Notification.class).getDeletedCount();
+        if (deleted == 0) {
+            throw new IllegalArgumentException("Notification introuvable : " + notificationId);
+        }
+    }
+
+    public long deleteNotifications(String userId, Collection<String> notificationIds) {
+        return mongoTemplate.remove(ownedBy(userId).addCriteria(Criteria.where("_id").in(notificationIds)),
+                Notification.class).getDeletedCount();
+    }
+
+    public long deleteAllNotifications(String userId) {
+        return mongoTemplate.remove(ownedBy(userId), Notification.class).getDeletedCount();
+    }
+
+    private static Query ownedBy(String userId) {
+        return Query.query(Criteria.where("userId").is(userId));
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private NotificationDTO mapToDTO(Notification notification, Map<String, NotificationRenderer.ActorProfile> profiles, Locale locale) {
+        int count = notification.getCount() != null ? notification.getCount() : 1;
+        int actorCount = notification.getActorIds() != null ? notification.getActorIds().size() : 0;
         return NotificationDTO.builder()
                 .id(notification.getId())
                 .userId(notification.getUserId())
                 .type(notification.getType())
-                .message(notification.getMessage())
+                .message(notificationRenderer.message(notification, profiles, locale))
+                .count(count > 1 ? count : null)
+                .actorCount(actorCount > 1 ? actorCount : null)
                 .timestamp(notification.getTimestamp())
                 .isRead(notification.isRead())
-                .data(notification.getData())
+                .data(notificationRenderer.data(notification, profiles))
                 .build();
     }
-}
\ No newline at end of file
+
+    // Événements d'une entrée accumulés entre deux écritures ; modifié uniquement sous compute()
+    private static final class PendingAggregate {
+
+        private final String userId;
+        private final String type;
+        private final Set<String> actorIds = new LinkedHashSet<>();
+        private int count;
+        private String actorId;
+        private Map<String, String> params;
+        private Instant timestamp;
+        private Instant expiresAt;
+
+        private PendingAggregate(String userId, String type) {
+            this.userId = userId;
+            this.type = type;
+        }
+
+        private void add(String actorId, Map<String, String> params, Instant timestamp, Instant expiresAt) {
+            count++;
+            this.actorId = actorId;
+            this.params = params;
+            this.timestamp = timestamp;
+            this.expiresAt = expiresAt;
+            if (actorId != null) {
+                actorIds.add(actorId);
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.BufferedChatSession;
+import com.Portbil.portfolio_backend.config.ChatClusterBus;
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.config.ChatSessionRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Distribution en mémoire des notifications vers les clients connectés, WebSocket comme Server-Sent Events :
+ * une même trame JSON part sur la session de chat et sur les flux SSE de l'utilisateur présents sur ce nœud,
+ * sinon elle est publiée une seule fois sur le {@link ChatClusterBus} pour le nœud qui les détient.
+ * L'id d'un événement SSE est "&lt;timestamp en ms&gt;-&lt;id de la notification&gt;" : unique même pour deux notifications de
+ * la même milliseconde. À la reconnexion, Last-Event-ID suffit à rejouer depuis MongoDB ce qui a été manqué ; le rejeu
+ * repart un peu avant ce timestamp (écritures différées encore en vol) et le client ignore les ids déjà reçus.
+ * Chaque flux SSE a sa file d'envoi bornée, vidée sur un thread virtuel : un client lent ne bloque pas l'émetteur.
+ */
+@Service
+public class NotificationStreamService {
+
+    public static final String NOTIFICATION_EVENT = "notification";
+    // Rejeu incomplet (trop d'événements manqués) : le client recharge sa boîte via GET /api/notifications/{userId}
+    public static final String RESYNC_EVENT = "resync";
+
+    // Commentaire SSE hors séquence : pas d'id, ignoré pendant un rejeu
+    private static final StreamEvent KEEPALIVE = new StreamEvent(null, null, null);
+
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final ChatClusterBus chatClusterBus;
+    private final long emitterTimeoutMs;
+    private final int bufferSizeLimit;
+    private final ExecutorService sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Set<StreamConnection>> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final LongAdder sentEvents;
+    private final LongAdder droppedStreams;
+
+    public NotificationStreamService(
+            ChatSessionRegistry chatSessionRegistry,
+            ChatClusterBus chatClusterBus,
+            ChatMetrics chatMetrics,
+            @Value("${app.notifications.stream.timeout-ms:1800000}") long emitterTimeoutMs,
+            @Value("${app.notifications.stream.buffer-size-limit:256}") int bufferSizeLimit) {
+        this.chatSessionRegistry = chatSessionRegistry;
+        this.chatClusterBus = chatClusterBus;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sentEvents = chatMetrics.counter("notifications.sse.events");
+        this.droppedStreams = chatMetrics.counter("notifications.sse.dropped");
+        chatMetrics.gauge("notifications.sse.open", openStreams::get);
+    }
+
+    @PostConstruct
+    public void subscribeToClusterNotifications() {
+        // Payload : "<userId>=<id d'événement>,...|<trame JSON>", les ids d'événement SSE précèdent la trame partagée
+        chatClusterBus.subscribe(ChatClusterBus.NOTIFICATION_TOPIC, (userIds, payload) -> {
+            int separator = payload.indexOf('|');
+            if (separator < 0) {
+                return;
+            }
+            TextMessage frame = new TextMessage(payload.substring(separator + 1));
+            for (String entry : payload.substring(0, separator).split(",")) {
+                int equals = entry.indexOf('=');
+                if (equals > 0) {
+                    deliverLocal(entry.substring(0, equals), entry.substring(equals + 1), frame);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streams.values().forEach(connections -> connections.forEach(connection -> connection.emitter.complete()));
+        sendExecutor.shutdown();
+    }
+
+    // Ouvre un flux SSE. Le flux est enregistré avant la lecture des événements manqués : ce qui arrive pendant
+    // le rejeu est retenu puis envoyé après lui, sans les événements déjà envoyés par le rejeu.
+    public SseEmitter open(String userId, Supplier<List<StreamEvent>> missed) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        StreamConnection connection = new StreamConnection(userId, emitter);
+        streams.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(connection);
+        openStreams.incrementAndGet();
+        emitter.onCompletion(connection::close);
+        emitter.onTimeout(connection::close);
+        emitter.onError(error -> connection.close());
+
+        Set<String> replayed = new HashSet<>();
+        try {
+            for (StreamEvent event : missed.get()) {
+                connection.send(event);
+                replayed.add(event.id());
+            }
+        } finally {
+            connection.release(replayed);
+        }
+        return emitter;
+    }
+
+    // Même trame pour tous les destinataires (eventIds : userId → id d'événement SSE de sa notification) ;
+    // ceux qui n'ont pas ici à la fois leur session WebSocket et un flux SSE sont publiés en une fois sur le bus :
+    // l'autre canal peut être ouvert sur un autre nœud. Chaque nœud ne sert que les connexions qu'il détient :
+    // le canal déjà servi ici ne reçoit pas de doublon
+    public void push(Map<String, String> eventIds, TextMessage frame) {
+        List<String> remote = new ArrayList<>();
+        StringBuilder remoteIds = new StringBuilder();
+        eventIds.forEach((userId, eventId) -> {
+            if (!deliverLocal(userId, eventId, frame)) {
+                remote.add(userId);
+                remoteIds.append(remoteIds.isEmpty() ? "" : ",").append(userId).append('=').append(eventId);
+            }
+        });
+        if (!remote.isEmpty()) {
+            chatClusterBus.publish(ChatClusterBus.NOTIFICATION_TOPIC, remote, remoteIds + "|" + frame.getPayload());
+        }
+    }
+
+    public static String eventId(Instant timestamp, String notificationId) {
+        return timestamp.toEpochMilli() + "-" + notificationId;
+    }
+
+    // Timestamp en ms porté par un id d'événement, null si l'id n'a pas été émis par ce service
+    public static Instant eventTimestamp(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        String value = eventId.trim();
+        int separator = value.indexOf('-');
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(separator > 0 ? value.substring(0, separator) : value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Commentaire SSE périodique : garde les proxys ouverts et détecte les clients partis
+    @Scheduled(fixedDelayString = "${app.notifications.stream.keepalive-interval-ms:25000}")
+    public void keepAlive() {
+        streams.values().forEach(connections -> connections.forEach(connection ->
+                connection.enqueue(KEEPALIVE)));
+    }
+
+    // Sert la session WebSocket et les flux SSE détenus par ce nœud ; true si les deux canaux ont été servis ici
+    private boolean deliverLocal(String userId, String eventId, TextMessage frame) {
+        boolean webSocketServed = false;
+        BufferedChatSession session = chatSessionRegistry.getLocal(userId);
+        if (session != null && session.isOpen()) {
+            webSocketServed = session.send(frame);
+        }
+        boolean streamServed = false;
+        Set<StreamConnection> connections = streams.get(userId);
+        if (connections != null && !connections.isEmpty()) {
+            StreamEvent event = new StreamEvent(eventId, NOTIFICATION_EVENT, frame.getPayload());
+            for (StreamConnection connection : connections) {
+                connection.enqueue(event);
+            }
+            streamServed = true;
+        }
+        return webSocketServed && streamServed;
+    }
+
+    public record StreamEvent(String id, String name, String data) {
+
+        // Un SseEventBuilder est consommé par l'envoi : un nouveau par flux et par événement
+        SseEmitter.SseEventBuilder toSse() {
+            if (id == null) {
+                return SseEmitter.event().comment("keepalive");
+            }
+            return SseEmitter.event().id(id).name(name).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    /**
+     * File d'envoi d'un flux SSE : un seul drain à la fois écrit sur la réponse, dans l'ordre d'arrivée.
+     * Au-delà de la limite, le client est jugé trop lent et le flux est fermé (il reprendra via Last-Event-ID).
+     */
+    private final class StreamConnection {
+
+        private final String userId;
+        private final SseEmitter emitter;
+        private final Queue<StreamEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Événements en direct retenus pendant le rejeu, null une fois le rejeu terminé
+        private List<StreamEvent> held = new ArrayList<>();
+
+        private StreamConnection(String userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        private void enqueue(StreamEvent event) {
+            synchronized (this) {
+                if (held != null) {
+                    if (event.id() != null) {
+                        held.add(event);
+                    }
+                    return;
+                }
+            }
+            send(event);
+        }
+
+        private void release(Set<String> replayed) {
+            List<StreamEvent> events;
+            synchronized (this) {
+                events = held;
+                held = null;
+            }
+            for (StreamEvent event : events) {
+                if (!replayed.contains(event.id())) {
+                    send(event);
+                }
+            }
+        }
+
+        private void send(StreamEvent event) {
+            if (closed.get()) {
+                return;
+            }
+            if (size.get() >= bufferSizeLimit) {
+                droppedStreams.increment();
+                close();
+                emitter.complete();
+                return;
+            }
+            queue.add(event);
+            if (size.getAndIncrement() == 0) {
+                sendExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                StreamEvent event = queue.poll();
+                if (!closed.get()) {
+                    try {
+                        emitter.send(event.toSse());
+                        sentEvents.increment();
+                    } catch (Exception e) {
+                        close();
+                        emitter.completeWithError(e);
+                    }
+                }
+            } while (size.decrementAndGet() > 0);
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            openStreams.decrementAndGet();
+            streams.computeIfPresent(userId, (id, connections) -> {
+                connections.remove(this);
+                return connections.isEmpty() ? null : connections;
+            });
+        }
+    }
+}
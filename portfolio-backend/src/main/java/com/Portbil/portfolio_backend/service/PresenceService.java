@@ -0,0 +1,465 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.BufferedChatSession;
+import com.Portbil.portfolio_backend.config.ChatClusterBus;
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.config.ChatSessionRegistry;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import com.Portbil.portfolio_backend.entity.User;
+import com.Portbil.portfolio_backend.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Présence (en ligne / hors ligne) et indicateurs de saisie. Les changements ne sont jamais diffusés à la volée :
+ * ils sont accumulés en mémoire (dernier état gagnant, frappes successives fusionnées) puis envoyés à chaque
+ * intervalle de flush, au plus une trame par utilisateur ou par conversation. Seuls les utilisateurs en ligne qui
+ * partagent une conversation ou sont amis reçoivent les trames.
+ * L'annuaire est tenu à jour sur tout le cluster par des baux : chaque nœud annonce ses connexions et renouvelle
+ * périodiquement les baux de ses utilisateurs sur le {@link ChatClusterBus}. Un utilisateur est en ligne tant qu'un
+ * nœud détient un bail non expiré ; les utilisateurs d'un nœud arrêté brutalement passent hors ligne à l'expiration.
+ * La saisie est répliquée de la même façon : chaque nœud connaît la liste complète et ne l'envoie qu'à ses sessions.
+ */
+@Service
+public class PresenceService {
+
+    public static final String ONLINE = "online";
+    public static final String OFFLINE = "offline";
+
+    // Annonces sur le bus : "<type>|<nodeId>" (présence) et "<chatId>|start" ou "<chatId>|stop" (saisie)
+    private static final String HEARTBEAT = "heartbeat";
+    private static final String RESYNC = "resync";
+    private static final String TYPING_START = "start";
+    private static final String TYPING_STOP = "stop";
+
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final ChatClusterBus chatClusterBus;
+    private final ChatFrameCodec chatFrameCodec;
+    private final ConversationService conversationService;
+    private final UserRepository userRepository;
+    private final long typingTtlMs;
+    private final long leaseTtlMs;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LongAdder presenceBroadcasts;
+    private final LongAdder typingBroadcasts;
+    private final LongAdder typingCoalesced;
+    private final LongAdder expiredLeases;
+
+    // Annuaire du cluster : userId → baux par nœud (expiration en ms, horloge locale) ; modifié uniquement sous compute()
+    private final Map<String, PresenceState> directory = new ConcurrentHashMap<>();
+
+    // Changements d'état des sessions locales en attente de diffusion, et utilisateurs dont "en ligne" a été diffusé
+    private final Map<String, String> pendingStatus = new ConcurrentHashMap<>();
+    private final Map<String, String> broadcastStatus = new ConcurrentHashMap<>();
+
+    // Saisie en cours sur tout le cluster : chatId → (userId → expiration en ms) ; la map interne n'est lue et modifiée
+    // que sous compute() sur la conversation, l'ajout d'un utilisateur ne peut donc pas croiser la suppression de l'entrée
+    private final Map<String, Map<String, Long>> typingByChat = new ConcurrentHashMap<>();
+    private final Set<String> dirtyChats = ConcurrentHashMap.newKeySet();
+
+    public PresenceService(
+            ChatSessionRegistry chatSessionRegistry,
+            ChatClusterBus chatClusterBus,
+            ChatFrameCodec chatFrameCodec,
+            ConversationService conversationService,
+            UserRepository userRepository,
+            ChatMetrics chatMetrics,
+            @Value("${app.chat.presence.typing-ttl-ms:5000}") long typingTtlMs,
+            @Value("${app.chat.presence.lease-ttl-ms:30000}") long leaseTtlMs) {
+        this.chatSessionRegistry = chatSessionRegistry;
+        this.chatClusterBus = chatClusterBus;
+        this.chatFrameCodec = chatFrameCodec;
+        this.conversationService = conversationService;
+        this.userRepository = userRepository;
+        this.typingTtlMs = typingTtlMs;
+        this.leaseTtlMs = leaseTtlMs;
+        this.presenceBroadcasts = chatMetrics.counter("chat.presence.broadcasts");
+        this.typingBroadcasts = chatMetrics.counter("chat.typing.broadcasts");
+        this.typingCoalesced = chatMetrics.counter("chat.typing.coalesced");
+        this.expiredLeases = chatMetrics.counter("chat.presence.expired_leases");
+        chatMetrics.gauge("chat.presence.online", () -> {
+            long now = System.currentTimeMillis();
+            return directory.values().stream().filter(state -> state.isOnline(now)).count();
+        });
+        chatMetrics.gauge("chat.typing.active_chats", typingByChat::size);
+    }
+
+    @PostConstruct
+    public void subscribeToClusterPresence() {
+        chatClusterBus.subscribe(ChatClusterBus.PRESENCE_TOPIC, (userIds, payload) -> {
+            int separator = payload.indexOf('|');
+            if (separator < 0) {
+                return;
+            }
+            String type = payload.substring(0, separator);
+            String remoteNodeId = payload.substring(separator + 1);
+            switch (type) {
+                case ONLINE, HEARTBEAT -> userIds.forEach(userId -> renewLease(userId, remoteNodeId));
+                case OFFLINE -> userIds.forEach(userId -> releaseLease(userId, remoteNodeId));
+                // Un nœud qui démarre demande l'état des autres au lieu d'attendre leur prochain battement
+                case RESYNC -> heartbeat();
+                default -> {
+                }
+            }
+        });
+        chatClusterBus.subscribe(ChatClusterBus.TYPING_TOPIC, (userIds, payload) -> {
+            int separator = payload.lastIndexOf('|');
+            if (separator < 0) {
+                return;
+            }
+            String chatId = payload.substring(0, separator);
+            boolean typing = TYPING_START.equals(payload.substring(separator + 1));
+            userIds.forEach(userId -> applyTyping(userId, chatId, typing));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void requestResync() {
+        chatClusterBus.publish(ChatClusterBus.PRESENCE_TOPIC, List.of(), RESYNC + "|" + nodeId);
+    }
+
+    public void connected(String userId) {
+        renewLease(userId, nodeId);
+        chatClusterBus.publish(ChatClusterBus.PRESENCE_TOPIC, List.of(userId), ONLINE + "|" + nodeId);
+        pendingStatus.put(userId, ONLINE);
+    }
+
+    // Hors ligne seulement si aucune session plus récente n'a remplacé celle qui se ferme, ici ou sur un autre nœud
+    public void disconnected(String userId) {
+        if (chatSessionRegistry.getLocal(userId) != null) {
+            return;
+        }
+        chatClusterBus.publish(ChatClusterBus.PRESENCE_TOPIC, List.of(userId), OFFLINE + "|" + nodeId);
+        if (!releaseLease(userId, nodeId)) {
+            pendingStatus.put(userId, OFFLINE);
+        }
+        for (String chatId : List.copyOf(typingByChat.keySet())) {
+            if (applyTyping(userId, chatId, false)) {
+                chatClusterBus.publish(ChatClusterBus.TYPING_TOPIC, List.of(userId), chatId + "|" + TYPING_STOP);
+            }
+        }
+    }
+
+    // Une frappe ne fait qu'allonger l'expiration ; seuls le début et la fin de saisie changent la liste diffusée.
+    // Les autres nœuds sont prévenus au début, à la fin, et à mi-parcours du délai pour qu'ils n'expirent pas l'entrée.
+    public void typing(String userId, String chatId, boolean typing) {
+        if (chatId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long[] previous = {0};
+        boolean changed;
+        if (typing) {
+            typingByChat.compute(chatId, (id, current) -> {
+                Map<String, Long> updated = current != null ? current : new HashMap<>();
+                Long expiresAt = updated.put(userId, now + typingTtlMs);
+                previous[0] = expiresAt != null ? expiresAt : 0;
+                return updated;
+            });
+            changed = previous[0] == 0;
+            if (changed) {
+                dirtyChats.add(chatId);
+            } else {
+                typingCoalesced.increment();
+            }
+            if (changed || previous[0] - now < typingTtlMs / 2) {
+                chatClusterBus.publish(ChatClusterBus.TYPING_TOPIC, List.of(userId), chatId + "|" + TYPING_START);
+            }
+        } else if (applyTyping(userId, chatId, false)) {
+            chatClusterBus.publish(ChatClusterBus.TYPING_TOPIC, List.of(userId), chatId + "|" + TYPING_STOP);
+        }
+    }
+
+    public boolean isOnline(String userId) {
+        PresenceState state = directory.get(userId);
+        return state != null && state.isOnline(System.currentTimeMillis());
+    }
+
+    // État des amis et des participants des conversations de l'utilisateur (chargement initial côté client)
+    public List<OutboundChatFrame.PresenceUpdate> getContactsPresence(String userId) {
+        return userRepository.findById(userId)
+                .map(user -> {
+                    Map<String, Set<String>> audiences = audiences(List.of(user));
+                    long now = System.currentTimeMillis();
+                    List<OutboundChatFrame.PresenceUpdate> updates = new ArrayList<>();
+                    for (String contactId : audiences.getOrDefault(userId, Set.of())) {
+                        PresenceState state = directory.get(contactId);
+                        updates.add(state != null && state.isOnline(now)
+                                ? new OutboundChatFrame.PresenceUpdate(contactId, ONLINE, state.since())
+                                : new OutboundChatFrame.PresenceUpdate(contactId, OFFLINE, null));
+                    }
+                    return updates;
+                })
+                .orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable"));
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.presence.flush-interval-ms:2000}")
+    public void flush() {
+        try {
+            flushTyping();
+            flushStatus();
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la diffusion de la présence : " + e.getMessage());
+        }
+    }
+
+    // Renouvelle les baux des sessions locales sur tout le cluster et expire ceux des nœuds devenus muets
+    @Scheduled(fixedDelayString = "${app.chat.presence.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        List<String> localUserIds = new ArrayList<>();
+        chatSessionRegistry.forEachLocal((userId, session) -> localUserIds.add(userId));
+        localUserIds.forEach(userId -> renewLease(userId, nodeId));
+        if (!localUserIds.isEmpty()) {
+            chatClusterBus.publish(ChatClusterBus.PRESENCE_TOPIC, localUserIds, HEARTBEAT + "|" + nodeId);
+        }
+        try {
+            expireLeases();
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de l'expiration des baux de présence : " + e.getMessage());
+        }
+    }
+
+    private void renewLease(String userId, String leaseNodeId) {
+        long now = System.currentTimeMillis();
+        directory.compute(userId, (id, state) -> {
+            Map<String, Long> leases = state != null ? new HashMap<>(state.leases()) : new HashMap<>();
+            boolean wasOnline = state != null && state.isOnline(now);
+            leases.put(leaseNodeId, now + leaseTtlMs);
+            return new PresenceState(leases, wasOnline ? state.since() : Instant.now());
+        });
+    }
+
+    // true si un autre nœud détient encore un bail valide pour l'utilisateur
+    private boolean releaseLease(String userId, String leaseNodeId) {
+        long now = System.currentTimeMillis();
+        PresenceState state = directory.computeIfPresent(userId, (id, current) -> {
+            Map<String, Long> leases = new HashMap<>(current.leases());
+            leases.remove(leaseNodeId);
+            leases.values().removeIf(expiresAt -> expiresAt <= now);
+            return leases.isEmpty() ? null : new PresenceState(leases, current.since());
+        });
+        return state != null;
+    }
+
+    // Utilisateurs dont le dernier bail a expiré (nœud arrêté sans annonce) : chaque nœud prévient ses propres
+    // sessions, le contact reçoit donc une seule trame quel que soit le nombre de nœuds
+    private void expireLeases() throws IOException {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (String userId : List.copyOf(directory.keySet())) {
+            boolean[] offline = {false};
+            directory.computeIfPresent(userId, (id, state) -> {
+                if (state.isOnline(now)) {
+                    return state;
+                }
+                offline[0] = true;
+                return null;
+            });
+            if (offline[0]) {
+                expired.add(userId);
+                broadcastStatus.remove(userId);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        expiredLeases.add(expired.size());
+        Map<String, Set<String>> audiences = audiences(userRepository.findAllById(expired));
+        for (String userId : expired) {
+            TextMessage frame = chatFrameCodec.encode(new OutboundChatFrame.Presence(
+                    List.of(new OutboundChatFrame.PresenceUpdate(userId, OFFLINE, Instant.now()))));
+            deliverLocal(audiences.getOrDefault(userId, Set.of()), frame);
+        }
+        for (String chatId : List.copyOf(typingByChat.keySet())) {
+            for (String userId : expired) {
+                applyTyping(userId, chatId, false);
+            }
+        }
+    }
+
+    // true si la liste des utilisateurs en train d'écrire a changé
+    private boolean applyTyping(String userId, String chatId, boolean typing) {
+        long expiresAt = System.currentTimeMillis() + typingTtlMs;
+        boolean[] changed = {false};
+        typingByChat.compute(chatId, (id, current) -> {
+            if (typing) {
+                Map<String, Long> updated = current != null ? current : new HashMap<>();
+                changed[0] = updated.put(userId, expiresAt) == null;
+                return updated;
+            }
+            if (current == null) {
+                return null;
+            }
+            changed[0] = current.remove(userId) != null;
+            return current.isEmpty() ? null : current;
+        });
+        if (changed[0]) {
+            dirtyChats.add(chatId);
+        }
+        return changed[0];
+    }
+
+    // Au plus une trame "typing" par conversation et par intervalle, avec la liste complète des utilisateurs en train
+    // d'écrire sur tout le cluster, envoyée aux seules sessions locales (chaque nœud sert les siennes)
+    private void flushTyping() throws IOException {
+        long now = System.currentTimeMillis();
+        for (String chatId : List.copyOf(typingByChat.keySet())) {
+            typingByChat.computeIfPresent(chatId, (id, typers) -> {
+                if (typers.values().removeIf(expiresAt -> expiresAt <= now)) {
+                    dirtyChats.add(chatId);
+                }
+                return typers.isEmpty() ? null : typers;
+            });
+        }
+        if (dirtyChats.isEmpty()) {
+            return;
+        }
+
+        List<String> chatIds = new ArrayList<>(dirtyChats);
+        chatIds.forEach(dirtyChats::remove);
+        Map<String, Collection<String>> participants = conversationService.getParticipants(chatIds);
+        for (String chatId : chatIds) {
+            Collection<String> members = participants.get(chatId);
+            if (members == null) {
+                typingByChat.remove(chatId);
+                continue;
+            }
+            // Un utilisateur qui n'est pas participant ne peut pas apparaître dans la conversation
+            List<String> typingUserIds = new ArrayList<>();
+            typingByChat.computeIfPresent(chatId, (id, typers) -> {
+                typers.keySet().forEach(typerId -> {
+                    if (members.contains(typerId)) {
+                        typingUserIds.add(typerId);
+                    }
+                });
+                return typers;
+            });
+            if (deliverLocal(members, chatFrameCodec.encode(new OutboundChatFrame.Typing(chatId, typingUserIds)))) {
+                typingBroadcasts.increment();
+            }
+        }
+    }
+
+    // Une connexion suivie d'une déconnexion dans le même intervalle (ou l'inverse) ne produit aucune trame
+    private void flushStatus() throws IOException {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+        Map<String, String> batch = new HashMap<>(pendingStatus);
+        batch.forEach(pendingStatus::remove);
+        batch.entrySet().removeIf(entry -> {
+            // Seuls les utilisateurs diffusés en ligne sont gardés dans broadcastStatus : absent = hors ligne
+            boolean online = ONLINE.equals(entry.getValue());
+            String previous = online ? broadcastStatus.put(entry.getKey(), ONLINE) : broadcastStatus.remove(entry.getKey());
+            return online == (previous != null);
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Set<String>> audiences = audiences(userRepository.findAllById(batch.keySet()));
+        for (Map.Entry<String, String> entry : batch.entrySet()) {
+            String userId = entry.getKey();
+            String status = entry.getValue();
+            Set<String> audience = audiences.getOrDefault(userId, Set.of());
+            PresenceState state = directory.get(userId);
+            Instant since = state != null && state.isOnline(now) ? state.since() : Instant.now();
+            List<String> recipients = online(audience);
+            if (!recipients.isEmpty()) {
+                chatSessionRegistry.deliverAll(recipients, chatFrameCodec.encode(new OutboundChatFrame.Presence(
+                        List.of(new OutboundChatFrame.PresenceUpdate(userId, status, since)))));
+                presenceBroadcasts.increment();
+            }
+            if (ONLINE.equals(status)) {
+                // L'utilisateur qui arrive reçoit en une trame ceux de ses contacts déjà en ligne
+                List<OutboundChatFrame.PresenceUpdate> snapshot = new ArrayList<>();
+                for (String contactId : recipients) {
+                    PresenceState contact = directory.get(contactId);
+                    snapshot.add(new OutboundChatFrame.PresenceUpdate(contactId, ONLINE, contact != null ? contact.since() : null));
+                }
+                chatSessionRegistry.deliver(userId, chatFrameCodec.encode(new OutboundChatFrame.Presence(snapshot)));
+            }
+        }
+    }
+
+    // true si au moins une session locale a reçu la trame
+    private boolean deliverLocal(Collection<String> userIds, TextMessage frame) {
+        boolean delivered = false;
+        for (String userId : userIds) {
+            BufferedChatSession session = chatSessionRegistry.getLocal(userId);
+            if (session != null && session.isOpen()) {
+                delivered |= session.send(frame);
+            }
+        }
+        return delivered;
+    }
+
+    // Amis et participants des conversations de chaque utilisateur, résolus en un seul lot
+    private Map<String, Set<String>> audiences(Iterable<User> users) {
+        Set<String> chatIds = new HashSet<>();
+        users.forEach(user -> {
+            if (user.getChatIds() != null) {
+                chatIds.addAll(user.getChatIds());
+            }
+        });
+        Map<String, Collection<String>> participants = conversationService.getParticipants(chatIds);
+
+        Map<String, Set<String>> audiences = new HashMap<>();
+        users.forEach(user -> {
+            Set<String> audience = new HashSet<>();
+            if (user.getFriendIds() != null) {
+                audience.addAll(user.getFriendIds());
+            }
+            if (user.getChatIds() != null) {
+                for (String chatId : user.getChatIds()) {
+                    audience.addAll(participants.getOrDefault(chatId, List.of()));
+                }
+            }
+            audience.remove(user.getId());
+            audiences.put(user.getId(), audience);
+        });
+        return audiences;
+    }
+
+    private List<String> online(Collection<String> userIds) {
+        List<String> online = new ArrayList<>();
+        for (String userId : userIds) {
+            if (isOnline(userId)) {
+                online.add(userId);
+            }
+        }
+        return online;
+    }
+
+    // Baux immuables : chaque modification remplace l'état sous compute()
+    private record PresenceState(Map<String, Long> leases, Instant since) {
+        boolean isOnline(long now) {
+            for (long expiresAt : leases.values()) {
+                if (expiresAt > now) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.config.ChatMetrics;
+import com.Portbil.portfolio_backend.config.ChatSessionRegistry;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import com.Portbil.portfolio_backend.entity.DeliveryCursor;
+import com.Portbil.portfolio_backend.entity.ReadWatermark;
+import com.Portbil.portfolio_backend.repository.DeliveryCursorRepository;
+import com.Portbil.portfolio_backend.repository.ReadWatermarkRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accusés de réception et de lecture. Chaque trame "ack" / "read" ne fait qu'avancer en mémoire un filigrane
+ * (utilisateur, conversation) : "reçu / lu jusqu'au message X". À chaque intervalle de flush, les filigranes de lecture
+ * sont persistés en un bulk et ceux des deux types sont relayés aux participants, en une trame "receipts" par conversation.
+ * Les filigranes de réception sont persistés par {@link DeliveryCursorService} (curseurs de rejeu) ; ceux de lecture
+ * remettent aussi à zéro le compteur de non-lus jusqu'au même message ({@link UnreadCounterService}).
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadReceiptService {
+
+    public static final String DELIVERED = "delivered";
+    public static final String READ = "read";
+
+    private final DeliveryCursorService deliveryCursorService;
+    private final DeliveryCursorRepository deliveryCursorRepository;
+    private final ReadWatermarkRepository readWatermarkRepository;
+    private final ConversationService conversationService;
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final ChatFrameCodec chatFrameCodec;
+    private final ChatMetrics chatMetrics;
+    private final MongoTemplate mongoTemplate;
+    private final UnreadCounterService unreadCounterService;
+
+    // Filigranes en attente de relais (et de persistance pour les lectures), fusionnés sur le plus récent
+    private final Map<ReceiptKey, String> pending = new ConcurrentHashMap<>();
+    private LongAdder rejected;
+
+    @PostConstruct
+    public void registerMetrics() {
+        chatMetrics.gauge("chat.receipts.pending", pending::size);
+        rejected = chatMetrics.counter("chat.receipts.rejected");
+    }
+
+    public void markDelivered(String userId, String chatId, String messageId) {
+        if (accepted(userId, chatId, messageId)) {
+            deliver(userId, chatId, messageId);
+        }
+    }
+
+    // Un message lu est aussi reçu : la lecture fait avancer les deux filigranes
+    public void markRead(String userId, String chatId, String messageId) {
+        if (accepted(userId, chatId, messageId)) {
+            deliver(userId, chatId, messageId);
+            pending.merge(new ReceiptKey(chatId, userId, READ), messageId, ReadReceiptService::latest);
+        }
+    }
+
+    // Un filigrane ne recule jamais ($max) : un id mal formé ou une conversation étrangère resterait pour toujours
+    private boolean accepted(String userId, String chatId, String messageId) {
+        if (chatId == null || messageId == null) {
+            return false;
+        }
+        if (!ObjectId.isValid(messageId) || !conversationService.isParticipant(chatId, userId)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void deliver(String userId, String chatId, String messageId) {
+        deliveryCursorService.acknowledge(userId, chatId, messageId);
+        pending.merge(new ReceiptKey(chatId, userId, DELIVERED), messageId, ReadReceiptService::latest);
+    }
+
+    // État courant d'une conversation : userId → dernier message reçu / lu
+    public Map<String, Map<String, String>> getReceipts(String chatId) {
+        Map<String, String> delivered = new HashMap<>();
+        for (DeliveryCursor cursor : deliveryCursorRepository.findByChatId(chatId)) {
+            delivered.put(cursor.getUserId(), cursor.getLastMessageId());
+        }
+        Map<String, String> read = new HashMap<>();
+        for (ReadWatermark watermark : readWatermarkRepository.findByChatId(chatId)) {
+            read.put(watermark.getUserId(), watermark.getLastReadMessageId());
+        }
+        pending.forEach((key, messageId) -> {
+            if (key.chatId().equals(chatId)) {
+                (DELIVERED.equals(key.kind()) ? delivered : read).merge(key.userId(), messageId, ReadReceiptService::latest);
+            }
+        });
+        return Map.of(DELIVERED, delivered, READ, read);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.receipts.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<ReceiptKey, String> batch = new HashMap<>(pending);
+        // Retrait conditionnel : un filigrane avancé pendant le flush reste en attente pour le suivant
+        batch.forEach(pending::remove);
+
+        Map<String, List<OutboundChatFrame.Receipt>> receiptsByChat = new HashMap<>();
+        batch.forEach((key, messageId) -> receiptsByChat
+                .computeIfAbsent(key.chatId(), chatId -> new ArrayList<>())
+                .add(new OutboundChatFrame.Receipt(key.userId(), key.kind(), messageId)));
+        Map<String, Collection<String>> participants = conversationService.getParticipants(receiptsByChat.keySet());
+
+        persistReadWatermarks(batch, participants);
+        resetUnreadCounters(batch, participants);
+        receiptsByChat.forEach((chatId, receipts) -> relay(chatId, receipts, participants.get(chatId)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void persistReadWatermarks(Map<ReceiptKey, String> batch, Map<String, Collection<String>> participants) {
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadWatermark.class);
+        int writes = 0;
+        for (Map.Entry<ReceiptKey, String> entry : batch.entrySet()) {
+            ReceiptKey key = entry.getKey();
+            if (!READ.equals(key.kind()) || !isParticipant(participants, key)) {
+                continue;
+            }
+            // $max : le filigrane ne recule pas si un autre nœud a déjà écrit une lecture plus récente
+            bulk.upsert(Query.query(Criteria.where("_id").is(key.userId() + ":" + key.chatId())), new Update()
+                    .max("lastReadMessageId", entry.getValue())
+                    .setOnInsert("userId", key.userId())
+                    .setOnInsert("chatId", key.chatId())
+                    .set("updatedAt", now));
+            writes++;
+        }
+        if (writes > 0) {
+            try {
+                bulk.execute();
+            } catch (Exception e) {
+                System.err.println("❌ Erreur lors de la persistance des accusés de lecture : " + e.getMessage());
+            }
+        }
+    }
+
+    // Même filigrane que la lecture : un compteur ne reste pas à N après un "read" du dernier message
+    private void resetUnreadCounters(Map<ReceiptKey, String> batch, Map<String, Collection<String>> participants) {
+        batch.forEach((key, messageId) -> {
+            if (!READ.equals(key.kind()) || !isParticipant(participants, key)) {
+                return;
+            }
+            try {
+                unreadCounterService.markChatAsRead(key.userId(), key.chatId(), messageId);
+            } catch (Exception e) {
+                System.err.println("❌ Erreur lors de la remise à zéro des non-lus de " + key.userId() + " dans " + key.chatId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void relay(String chatId, List<OutboundChatFrame.Receipt> receipts, Collection<String> members) {
+        if (members == null) {
+            return;
+        }
+        // Un utilisateur qui n'est pas participant ne peut pas publier d'accusé dans la conversation
+        receipts.removeIf(receipt -> !members.contains(receipt.userId()));
+        if (receipts.isEmpty()) {
+            return;
+        }
+        try {
+            chatSessionRegistry.deliverAll(members, chatFrameCodec.encode(new OutboundChatFrame.Receipts(chatId, receipts)));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors du relais des accusés de la conversation " + chatId + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isParticipant(Map<String, Collection<String>> participants, ReceiptKey key) {
+        Collection<String> members = participants.get(key.chatId());
+        return members != null && members.contains(key.userId());
+    }
+
+    // Les ids ObjectId hexadécimaux de même longueur se comparent dans l'ordre de création
+    private static String latest(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private record ReceiptKey(String chatId, String userId, String kind) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.config.ChatSessionRegistry;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.entity.UnreadCounter;
+import com.Portbil.portfolio_backend.repository.UnreadCounterRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compteurs de messages non lus par (utilisateur, conversation), tenus à jour de façon incrémentale :
+ * chaque lot de messages persisté donne un seul bulk de mises à jour, remis à zéro quand l'utilisateur lit la conversation.
+ * La lecture pose une marque (readUpTo, id du dernier message lu) : un message encore dans le tampon d'écriture
+ * au moment de la lecture et persisté après elle n'est compté que s'il est plus récent que la marque.
+ * Les nouvelles valeurs sont poussées aux destinataires par une trame "unread".
+ */
+@Service
+@RequiredArgsConstructor
+public class UnreadCounterService implements MessagePersistListener {
+
+    private final UnreadCounterRepository unreadCounterRepository;
+    private final MongoTemplate mongoTemplate;
+    private final GroupMembershipService groupMembershipService;
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final ChatFrameCodec chatFrameCodec;
+    private final PresenceService presenceService;
+
+    @Override
+    public void onMessagesPersisted(List<Message> messages) {
+        // Ids des messages à compter par clé "userId:chatId" : N messages d'une même conversation = une seule mise à jour
+        Map<String, List<String>> increments = new LinkedHashMap<>();
+        for (Message message : messages) {
+            if (message.getChatId() == null) {
+                continue;
+            }
+            if ("group_message".equals(message.getType())) {
+                for (String memberId : groupMembershipService.getMembers(message.getChatId())) {
+                    if (!memberId.equals(message.getFromUserId())) {
+                        increments.computeIfAbsent(key(memberId, message.getChatId()), key -> new ArrayList<>()).add(message.getId());
+                    }
+                }
+            } else if (message.getToUserId() != null) {
+                increments.computeIfAbsent(key(message.getToUserId(), message.getChatId()), key -> new ArrayList<>()).add(message.getId());
+            }
+        }
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        Date now = new Date();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        increments.forEach((key, messageIds) -> {
+            int separator = key.indexOf(':');
+            // Mise à jour en pipeline : la comparaison à la marque de lecture et l'incrément sont atomiques
+            bulk.upsert(Query.query(Criteria.where("_id").is(key)), AggregationUpdate.update()
+                    .set("count").toValue(countAfterReadMark(messageIds))
+                    .set("userId").toValue(key.substring(0, separator))
+                    .set("chatId").toValue(key.substring(separator + 1))
+                    .set("updatedAt").toValue(now));
+        });
+        bulk.execute();
+
+        // Valeurs à jour relues en une requête, puis poussées aux destinataires en ligne : une trame par valeur
+        // (conversation, compteur), envoyée à tous ses destinataires en une livraison (locale + une publication sur le bus)
+        List<UnreadCounter> updated = mongoTemplate.find(
+                Query.query(Criteria.where("_id").in(increments.keySet())), UnreadCounter.class);
+        Map<OutboundChatFrame.Unread, List<String>> recipientsByFrame = new HashMap<>();
+        for (UnreadCounter counter : updated) {
+            if (presenceService.isOnline(counter.getUserId())) {
+                recipientsByFrame.computeIfAbsent(new OutboundChatFrame.Unread(counter.getChatId(), counter.getCount()),
+                        frame -> new ArrayList<>()).add(counter.getUserId());
+            }
+        }
+        recipientsByFrame.forEach((frame, recipients) -> {
+            try {
+                chatSessionRegistry.deliverAll(recipients, chatFrameCodec.encode(frame));
+            } catch (IOException e) {
+                System.err.println("❌ Erreur lors de l'envoi des compteurs de non-lus de " + frame.chatId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // chatId → nombre de messages non lus (conversations sans non-lus omises)
+    public Map<String, Long> getUnreadCounts(String userId) {
+        Map<String, Long> counts = new HashMap<>();
+        for (UnreadCounter counter : unreadCounterRepository.findUnreadByUserId(userId)) {
+            counts.put(counter.getChatId(), counter.getCount());
+        }
+        return counts;
+    }
+
+    // Compteurs d'un ensemble de conversations, en une requête sur les _id "userId:chatId"
+    public Map<String, Long> getUnreadCounts(String userId, Collection<String> chatIds) {
+        Map<String, Long> counts = new HashMap<>();
+        if (chatIds.isEmpty()) {
+            return counts;
+        }
+        List<String> keys = chatIds.stream().map(chatId -> key(userId, chatId)).toList();
+        for (UnreadCounter counter : mongoTemplate.find(Query.query(Criteria.where("_id").in(keys)), UnreadCounter.class)) {
+            counts.put(counter.getChatId(), counter.getCount());
+        }
+        return counts;
+    }
+
+    // Lu jusqu'au message upToMessageId (tout ce qui existe à cet instant si null). Une marque plus ancienne que
+    // celle déjà posée (trame de lecture en retard) est ignorée
+    public void markChatAsRead(String userId, String chatId, String upToMessageId) {
+        String readUpTo = upToMessageId != null ? upToMessageId : new ObjectId().toHexString();
+        String key = key(userId, chatId);
+        try {
+            // Upsert : la marque posée avant la création du compteur vaut aussi pour les messages encore en vol
+            mongoTemplate.upsert(
+                    Query.query(Criteria.where("_id").is(key).orOperator(
+                            Criteria.where("readUpTo").exists(false), Criteria.where("readUpTo").lte(readUpTo))),
+                    new Update().set("count", 0L).set("readUpTo", readUpTo).set("updatedAt", Instant.now())
+                            .setOnInsert("userId", userId).setOnInsert("chatId", chatId),
+                    UnreadCounter.class);
+        } catch (DuplicateKeyException e) {
+            // Marque existante plus récente : le compteur ne porte déjà que des messages postérieurs
+            return;
+        }
+        push(userId, chatId, 0);
+    }
+
+    // count + nombre d'ids plus récents que readUpTo (les ObjectId hexadécimaux se comparent dans l'ordre de création)
+    private static AggregationExpression countAfterReadMark(List<String> messageIds) {
+        Document afterReadMark = new Document("$filter", new Document("input", messageIds)
+                .append("cond", new Document("$gt", List.of("$$this", new Document("$ifNull", List.of("$readUpTo", ""))))));
+        return context -> new Document("$add", List.of(
+                new Document("$ifNull", List.of("$count", 0L)),
+                new Document("$size", afterReadMark)));
+    }
+
+    private void push(String userId, String chatId, long count) {
+        try {
+            chatSessionRegistry.deliver(userId, chatFrameCodec.encode(new OutboundChatFrame.Unread(chatId, count)));
+        } catch (IOException e) {
+            System.err.println("❌ Erreur lors de l'envoi du compteur de non-lus à " + userId + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(String userId, String chatId) {
+        return userId + ":" + chatId;
+    }
+}
@@ -1,6 +1,5 @@
 package com.Portbil.portfolio_backend.service;
 
-import com.Portbil.portfolio_backend.config.ChatWebSocketHandler;
 import com.Portbil.portfolio_backend.dto.UserCoordinatesDTO;
 import com.Portbil.portfolio_backend.dto.UserDTO;
 import com.Portbil.portfolio_backend.dto.WeatherDTO;
@@ -29,7 +28,7 @@ public class UserService {
     private final GoogleMapsService googleMapsService;
     private final EmailTemplateService emailTemplateService;
     private final ImageRepository imageRepository;
-    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final NotificationService notificationService;
     private final MessageSource messageSource; // Injection de MessageSource
     private final String DEVELOPER_ID = "developer-id-here";
     private final String DEVELOPER_EMAIL = "developer-email@example.com";
@@ -562,21 +561,7 @@ public class UserService {
         try {
             Map<String, String> notificationData = new HashMap<>();
             notificationData.put("likerId", likerId);
-            String likerName = Optional.ofNullable(liker.getFirstName())
-                    .map(fn -> fn + " " + Optional.ofNullable(liker.getLastName()).orElse(""))
-                    .orElse("Utilisateur inconnu");
-            chatWebSocketHandler.sendNotification(
-                    likedId,
-                    "user_like",
-                    likerName + " a liké votre profil !",
-                    notificationData
-            );
-            chatWebSocketHandler.persistNotification(
-                    likedId,
-                    "user_like",
-                    likerName + " a liké votre profil !",
-                    notificationData
-            );
+            notificationService.notifyUser(likedId, "user_like", likerId, notificationData);
         } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi de la notification de like : " + e.getMessage());
         }
@@ -610,21 +595,7 @@ public class UserService {
         try {
             Map<String, String> notificationData = new HashMap<>();
             notificationData.put("likerId", likerId);
-            String likerName = Optional.ofNullable(liker.getFirstName())
-                    .map(fn -> fn + " " + Optional.ofNullable(liker.getLastName()).orElse(""))
-                    .orElse("Utilisateur inconnu");
-            chatWebSocketHandler.sendNotification(
-                    likedId,
-                    "user_unlike",
-                    likerName + " a retiré son like de votre profil.",
-                    notificationData
-            );
-            chatWebSocketHandler.persistNotification(
-                    likedId,
-                    "user_unlike",
-                    likerName + " a retiré son like de votre profil.",
-                    notificationData
-            );
+            notificationService.notifyUser(likedId, "user_unlike", likerId, notificationData);
         } catch (Exception e) {
             System.err.println("❌ Erreur lors de l'envoi de la notification de unlike : " + e.getMessage());
         }
@@ -0,0 +1,92 @@
+package com.Portbil.portfolio_backend.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.Portbil.portfolio_backend.config.ChatFrameCodec;
+import com.Portbil.portfolio_backend.dto.InboundChatFrame;
+import com.Portbil.portfolio_backend.dto.OutboundChatFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût par trame du décodage Map + HashMap/writeValueAsString d'origine face aux trames typées de {@link ChatFrameCodec}.
+ * Lancer avec : mvn -P benchmarks test-compile exec:exec (le profileur gc donne gc.alloc.rate.norm, en octets par opération).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatFrameCodecBenchmark {
+
+    private static final String INBOUND = "{\"type\":\"group_message\",\"groupId\":\"65f1c0ffee00000000000001\","
+            + "\"content\":\"Salut tout le monde, la réunion est déplacée à 15h\"}";
+
+    @Param({"50"})
+    private int recipients;
+
+    private ObjectMapper legacyMapper;
+    private ChatFrameCodec codec;
+    private Instant timestamp;
+
+    @Setup
+    public void setup() {
+        legacyMapper = new ObjectMapper();
+        codec = new ChatFrameCodec();
+        timestamp = Instant.now();
+    }
+
+    @Benchmark
+    public Map<?, ?> decodeLegacyMap() throws Exception {
+        return legacyMapper.readValue(INBOUND, Map.class);
+    }
+
+    @Benchmark
+    public InboundChatFrame decodeTyped() throws Exception {
+        return codec.decode(INBOUND);
+    }
+
+    // Ancienne diffusion de groupe : une notification reconstruite et resérialisée par destinataire
+    @Benchmark
+    public void broadcastLegacyPerRecipient(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < recipients; i++) {
+            Map<String, Object> notification = new HashMap<>();
+            notification.put("type", "notification");
+            notification.put("notificationType", "new_group_message");
+            notification.put("message", "Nouveau message dans le groupe");
+            notification.put("timestamp", timestamp.toString());
+            notification.put("groupId", "65f1c0ffee00000000000001");
+            notification.put("fromUserId", "65f1c0ffee00000000000002");
+            blackhole.consume(new TextMessage(legacyMapper.writeValueAsString(notification)));
+        }
+    }
+
+    // Diffusion actuelle : trame typée sérialisée une fois, même TextMessage pour chaque destinataire
+    @Benchmark
+    public void broadcastTypedShared(Blackhole blackhole) throws Exception {
+        Map<String, String> data = new HashMap<>();
+        data.put("groupId", "65f1c0ffee00000000000001");
+        data.put("fromUserId", "65f1c0ffee00000000000002");
+        TextMessage frame = codec.encode(new OutboundChatFrame.Notification(
+                "new_group_message", "Nouveau message dans le groupe", timestamp, data));
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(frame);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.Portbil.portfolio_backend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.Portbil.portfolio_backend.security.JwtUtil;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Générateur de charge du chat WebSocket, à lancer contre une instance locale :
+ * mvn -P loadtest test-compile exec:exec -Dloadtest.args="--sessions=2000 --rate=2000 --duration=60 --seed"
+ *
+ * Ouvre N sessions (JWT signés avec JwtUtil et le même jwt.secret que le serveur), forme des groupes par
+ * "group_invite", puis envoie au débit cible des messages privés et de groupe. Chaque contenu porte son
+ * instant d'envoi : la latence de bout en bout est mesurée à la réception et agrégée en histogrammes HDR.
+ * --seed crée les utilisateurs dans MongoDB (un message privé exige un destinataire existant), --cleanup les retire.
+ * Les expéditeurs sont servis à tour de rôle : chaque session envoie rate / sessions messages par seconde. Les valeurs
+ * par défaut (0,5 message/s par session, 9 invitations par groupe) restent sous les limites par défaut du serveur
+ * (app.chat.rate-limit.*, --user-rate-limit) ; au-delà, relever ces limites sur l'instance testée. Les réponses
+ * rate_limited sont comptées à part et n'entrent pas dans les latences.
+ */
+public final class ChatLoadGenerator {
+
+    private static final String LATENCY_MARKER = "lt:";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Options options;
+    private final String runId = new ObjectId().toHexString();
+    private final Recorder privateLatency = new Recorder(TimeUnit.SECONDS.toNanos(60), 3);
+    private final Recorder groupLatency = new Recorder(TimeUnit.SECONDS.toNanos(60), 3);
+    private final Histogram privateTotal = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+    private final Histogram groupTotal = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final List<Client> clients = new ArrayList<>();
+    private final Map<String, String> groupByUser = new HashMap<>();
+    private CountDownLatch pendingInvites;
+
+    private ChatLoadGenerator(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ChatLoadGenerator(Options.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        List<String> userIds = options.seed ? seedUsers() : options.userIds;
+        if (userIds.size() < 2) {
+            throw new IllegalArgumentException("Au moins deux utilisateurs sont nécessaires : --seed ou --user-ids=id1,id2,...");
+        }
+
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", options.jwtSecret);
+        ReflectionTestUtils.setField(jwtUtil, "expirationMs", TimeUnit.SECONDS.toMillis(options.durationSeconds + 3600));
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        connect(httpClient, jwtUtil, userIds);
+        formGroups();
+        drive();
+
+        for (Client client : clients) {
+            client.webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "fin du test");
+        }
+        if (options.seed && options.cleanup) {
+            cleanup(userIds);
+        }
+        System.exit(0);
+    }
+
+    private void connect(HttpClient httpClient, JwtUtil jwtUtil, List<String> userIds) throws InterruptedException {
+        long start = System.nanoTime();
+        Semaphore handshakes = new Semaphore(options.connectConcurrency);
+        List<CompletableFuture<Void>> opened = new ArrayList<>();
+        for (String userId : userIds) {
+            String token = jwtUtil.generateToken(User.withUsername(userId).password("n/a").roles("USER").build());
+            Client client = new Client(userId);
+            clients.add(client);
+            handshakes.acquire();
+            opened.add(httpClient.newWebSocketBuilder()
+                    .buildAsync(URI.create(options.url + "?token=" + token), client)
+                    .thenAccept(webSocket -> client.webSocket = webSocket)
+                    .whenComplete((ignored, error) -> {
+                        handshakes.release();
+                        if (error != null) {
+                            errors.increment();
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(opened.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+        clients.removeIf(client -> client.webSocket == null);
+        System.out.printf("🔌 %d session(s) ouvertes en %d ms (%d échec(s))%n",
+                clients.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), errors.sum());
+    }
+
+    // Groupes de --group-size membres : le premier membre invite les autres (il devient membre du groupe créé)
+    private void formGroups() throws InterruptedException {
+        int groupCount = clients.size() / options.groupSize;
+        pendingInvites = new CountDownLatch(groupCount * (options.groupSize - 1));
+        for (int g = 0; g < groupCount; g++) {
+            String groupId = "loadtest-" + runId + "-" + g;
+            Client owner = clients.get(g * options.groupSize);
+            for (int m = 0; m < options.groupSize; m++) {
+                Client member = clients.get(g * options.groupSize + m);
+                groupByUser.put(member.userId, groupId);
+                if (m > 0) {
+                    owner.send(Map.of("type", "group_invite", "groupId", groupId, "invitedUserId", member.userId));
+                }
+            }
+        }
+        boolean complete = pendingInvites.await(60, TimeUnit.SECONDS);
+        System.out.printf("👥 %d groupe(s) de %d membres %s%n", groupCount, options.groupSize, complete ? "formés" : "partiellement formés (délai dépassé)");
+    }
+
+    // Envoi à débit constant : l'instant prévu de chaque envoi est fixé à l'avance (pas d'omission coordonnée)
+    private void drive() {
+        double perSession = options.rate / (double) clients.size();
+        if (perSession > options.userRateLimit) {
+            System.out.printf("⚠️ %.2f message(s)/s par session au-delà de la limite serveur de %.2f/s : relever app.chat.rate-limit.messages%n",
+                    perSession, options.userRateLimit);
+        }
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Histogram privateInterval = null;
+        Histogram groupInterval = null;
+
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * intervalNanos;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            // Tour de rôle : aucun expéditeur ne dépasse rate / sessions, contrairement à un tirage au hasard
+            Client sender = clients.get((int) (i % clients.size()));
+            String groupId = groupByUser.get(sender.userId);
+            String content = LATENCY_MARKER + scheduled;
+            if (groupId != null && random.nextDouble() < options.groupRatio) {
+                sender.send(Map.of("type", "group_message", "groupId", groupId, "content", content));
+            } else {
+                Client recipient = clients.get(random.nextInt(clients.size()));
+                if (recipient == sender) {
+                    continue;
+                }
+                sender.send(Map.of("type", "private", "toUserId", recipient.userId, "content", content));
+            }
+            sent.increment();
+
+            if (System.nanoTime() >= nextReport) {
+                privateInterval = privateLatency.getIntervalHistogram(privateInterval);
+                groupInterval = groupLatency.getIntervalHistogram(groupInterval);
+                privateTotal.add(privateInterval);
+                groupTotal.add(groupInterval);
+                report("intervalle", privateInterval, groupInterval, options.reportIntervalSeconds);
+                nextReport += TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+            }
+        }
+
+        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(options.drainSeconds));
+        privateTotal.add(privateLatency.getIntervalHistogram());
+        groupTotal.add(groupLatency.getIntervalHistogram());
+        report("total", privateTotal, groupTotal, options.durationSeconds);
+        System.out.printf("📊 envoyés=%d reçus=%d limités=%d erreurs=%d%n", sent.sum(), received.sum(), throttled.sum(), errors.sum());
+    }
+
+    private void report(String label, Histogram privateHistogram, Histogram groupHistogram, long seconds) {
+        System.out.printf("⏱️ [%s] débit reçu privé=%.0f/s groupe=%.0f/s (limités depuis le début : %d)%n", label,
+                privateHistogram.getTotalCount() / (double) seconds, groupHistogram.getTotalCount() / (double) seconds, throttled.sum());
+        printPercentiles("privé ", privateHistogram);
+        printPercentiles("groupe", groupHistogram);
+    }
+
+    private static void printPercentiles(String label, Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return;
+        }
+        System.out.printf("   %s p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms (n=%d)%n", label,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()), histogram.getTotalCount());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private List<String> seedUsers() {
+        List<String> userIds = new ArrayList<>(options.sessions);
+        List<Document> users = new ArrayList<>(options.sessions);
+        for (int i = 0; i < options.sessions; i++) {
+            ObjectId id = new ObjectId();
+            userIds.add(id.toHexString());
+            users.add(new Document("_id", id)
+                    .append("email", "loadtest+" + runId + "-" + i + "@example.invalid")
+                    .append("slug", "loadtest-" + runId + "-" + i)
+                    .append("firstName", "Load")
+                    .append("lastName", "Test " + i)
+                    .append("chatIds", new ArrayList<>())
+                    .append("loadTestRun", runId));
+        }
+        try (MongoClient mongoClient = MongoClients.create(options.mongoUri)) {
+            mongoClient.getDatabase(options.database).getCollection("users").insertMany(users);
+        }
+        System.out.printf("🌱 %d utilisateur(s) de test créés (run %s)%n", userIds.size(), runId);
+        return userIds;
+    }
+
+    private void cleanup(List<String> userIds) {
+        try (MongoClient mongoClient = MongoClients.create(options.mongoUri)) {
+            MongoDatabase database = mongoClient.getDatabase(options.database);
+            database.getCollection("users").deleteMany(Filters.eq("loadTestRun", runId));
+            database.getCollection("messages").deleteMany(Filters.in("fromUserId", userIds));
+            database.getCollection("notifications").deleteMany(Filters.in("userId", userIds));
+            database.getCollection("conversations").deleteMany(Filters.in("participantIds", userIds));
+            database.getCollection("groups").deleteMany(Filters.regex("_id", "^loadtest-" + runId));
+            database.getCollection("chat_summaries").deleteMany(Filters.in("participantIds", userIds));
+            database.getCollection("unread_counters").deleteMany(Filters.in("userId", userIds));
+            database.getCollection("delivery_cursors").deleteMany(Filters.in("userId", userIds));
+        }
+        System.out.printf("🧹 Données du run %s supprimées (%d utilisateurs)%n", runId, userIds.size());
+    }
+
+    private final class Client implements WebSocket.Listener {
+
+        private final String userId;
+        private final StringBuilder partial = new StringBuilder();
+        private volatile WebSocket webSocket;
+        private CompletableFuture<WebSocket> sendChain = CompletableFuture.completedFuture(null);
+
+        private Client(String userId) {
+            this.userId = userId;
+        }
+
+        // java.net.http.WebSocket refuse deux envois en cours : les envois d'une session sont chaînés
+        private synchronized void send(Map<String, String> frame) {
+            String json;
+            try {
+                json = MAPPER.writeValueAsString(frame);
+            } catch (Exception e) {
+                errors.increment();
+                return;
+            }
+            sendChain = sendChain.thenCompose(ignored -> webSocket.sendText(json, true))
+                    .exceptionally(error -> {
+                        errors.increment();
+                        return webSocket;
+                    });
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                handle(partial.toString());
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        private void handle(String payload) {
+            long now = System.nanoTime();
+            try {
+                if (payload.contains("\"invite_sent\"")) {
+                    pendingInvites.countDown();
+                    return;
+                }
+                // Trame refusée par le limiteur du serveur : ni reçue ni mesurée
+                if (payload.contains("\"rate_limited\"")) {
+                    throttled.increment();
+                    return;
+                }
+                if (!payload.contains(LATENCY_MARKER)) {
+                    return;
+                }
+                JsonNode frame = MAPPER.readTree(payload);
+                String type = frame.path("type").asText();
+                String content = frame.path("content").asText();
+                if (!content.startsWith(LATENCY_MARKER) || userId.equals(frame.path("fromUserId").asText())) {
+                    return; // Accusé d'envoi ou écho de son propre message de groupe
+                }
+                long latency = Math.max(0, now - Long.parseLong(content.substring(LATENCY_MARKER.length())));
+                received.increment();
+                if ("group_message".equals(type)) {
+                    groupLatency.recordValue(Math.min(latency, groupTotal.getHighestTrackableValue()));
+                } else if ("private".equals(type)) {
+                    privateLatency.recordValue(Math.min(latency, privateTotal.getHighestTrackableValue()));
+                }
+            } catch (Exception e) {
+                errors.increment();
+            }
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            errors.increment();
+        }
+    }
+
+    private record Options(String url, int sessions, int rate, long durationSeconds, double groupRatio, int groupSize,
+                           String jwtSecret, boolean seed, boolean cleanup, String mongoUri, String database,
+                           List<String> userIds, int connectConcurrency, long reportIntervalSeconds, long drainSeconds,
+                           double userRateLimit) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    int separator = arg.indexOf('=');
+                    values.put(separator > 0 ? arg.substring(2, separator) : arg.substring(2), separator > 0 ? arg.substring(separator + 1) : "true");
+                }
+            }
+            String userIds = values.getOrDefault("user-ids", "");
+            return new Options(
+                    values.getOrDefault("url", "ws://localhost:8080/chat"),
+                    Integer.parseInt(values.getOrDefault("sessions", "1000")),
+                    Integer.parseInt(values.getOrDefault("rate", "500")),
+                    Long.parseLong(values.getOrDefault("duration", "60")),
+                    Double.parseDouble(values.getOrDefault("group-ratio", "0.2")),
+                    // Le créateur invite group-size - 1 membres : sous la limite serveur de 10 invitations par minute
+                    Integer.parseInt(values.getOrDefault("group-size", "10")),
+                    values.getOrDefault("jwt-secret", System.getenv("JWT_SECRET")),
+                    Boolean.parseBoolean(values.getOrDefault("seed", "false")),
+                    Boolean.parseBoolean(values.getOrDefault("cleanup", "false")),
+                    values.getOrDefault("mongo-uri", "mongodb://localhost:27017"),
+                    values.getOrDefault("database", "portfolio"),
+                    userIds.isBlank() ? List.of() : List.of(userIds.split(",")),
+                    Integer.parseInt(values.getOrDefault("connect-concurrency", "200")),
+                    Long.parseLong(values.getOrDefault("report-interval", "5")),
+                    Long.parseLong(values.getOrDefault("drain", "5")),
+                    // Limite serveur par défaut : 20 messages par 10 s
+                    Double.parseDouble(values.getOrDefault("user-rate-limit", "2")));
+        }
+    }
+}
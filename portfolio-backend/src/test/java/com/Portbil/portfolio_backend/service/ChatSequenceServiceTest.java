@@ -0,0 +1,132 @@
+package com.Portbil.portfolio_backend.service;
+
+import com.Portbil.portfolio_backend.entity.ChatSequence;
+import com.Portbil.portfolio_backend.entity.Message;
+import com.Portbil.portfolio_backend.repository.MessageRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatSequenceServiceTest {
+
+    private static final String CHAT_ID = "chat-1";
+    private static final long GAP_TIMEOUT_MS = 30_000;
+
+    private MongoTemplate mongoTemplate;
+    private MessageRepository messageRepository;
+    private ChatSequenceService service;
+
+    // État simulé de chat_sequences et de messages pour CHAT_ID
+    private final ChatSequence sequence = new ChatSequence(CHAT_ID, 0, 0);
+    private final List<Message> persisted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        messageRepository = mock(MessageRepository.class);
+        service = new ChatSequenceService(mongoTemplate, messageRepository, GAP_TIMEOUT_MS);
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(ChatSequence.class)))
+                .thenAnswer(invocation -> {
+                    Update update = invocation.getArgument(1);
+                    Number increment = (Number) update.getUpdateObject().get("$inc", Document.class).get("seq");
+                    sequence.setSeq(sequence.getSeq() + increment.longValue());
+                    return new ChatSequence(CHAT_ID, sequence.getSeq(), sequence.getPersistedSeq());
+                });
+        when(mongoTemplate.findById(CHAT_ID, ChatSequence.class)).thenAnswer(invocation -> sequence.getSeq() == 0 ? null
+                : new ChatSequence(CHAT_ID, sequence.getSeq(), sequence.getPersistedSeq()));
+        when(messageRepository.findSeqsAfter(eq(CHAT_ID), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long after = invocation.getArgument(1);
+            Pageable pageable = invocation.getArgument(2);
+            return persisted.stream()
+                    .filter(message -> message.getSeq() > after)
+                    .sorted(Comparator.comparing(Message::getSeq))
+                    .limit(pageable.getPageSize())
+                    .toList();
+        });
+    }
+
+    @Test
+    void sparseChatGetsConsecutiveNumbers() {
+        // Un message de temps en temps : aucun bloc ni délai ne crée de saut entre deux envois
+        assertEquals(1, service.next(CHAT_ID));
+        assertEquals(2, service.next(CHAT_ID));
+        assertEquals(3, service.next(CHAT_ID));
+        assertEquals(3, sequence.getSeq());
+    }
+
+    @Test
+    void currentStopsBelowSeqStillInFlight() {
+        long first = service.next(CHAT_ID);
+        long inFlight = service.next(CHAT_ID);
+        long third = service.next(CHAT_ID);
+        Instant now = Instant.now();
+        // Le 2 est encore dans le tampon d'écriture d'un autre nœud, le 3 est déjà inséré
+        persist(first, now);
+        persist(third, now);
+
+        assertEquals(1, service.current(CHAT_ID));
+        verifyPersistedSeq(1);
+
+        persist(inFlight, now);
+        assertEquals(3, service.current(CHAT_ID));
+        verifyPersistedSeq(3);
+    }
+
+    @Test
+    void currentSkipsGapOlderThanTimeout() {
+        service.next(CHAT_ID);
+        service.next(CHAT_ID);
+        long third = service.next(CHAT_ID);
+        Instant old = Instant.now().minusMillis(GAP_TIMEOUT_MS * 2);
+        // Le 2 n'a jamais été inséré et le 3, plus récent que lui, est ancien : le trou est définitif
+        persist(1, old);
+        persist(third, old);
+
+        assertEquals(3, service.current(CHAT_ID));
+        verifyPersistedSeq(3);
+    }
+
+    @Test
+    void currentWithNothingPersistedDoesNotWrite() {
+        service.next(CHAT_ID);
+
+        assertEquals(0, service.current(CHAT_ID));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ChatSequence.class));
+    }
+
+    private void persist(long seq, Instant timestamp) {
+        persisted.add(Message.builder().chatId(CHAT_ID).seq(seq).timestamp(timestamp).build());
+    }
+
+    // Applique le dernier $max écrit sur le compteur simulé
+    private void verifyPersistedSeq(long expected) {
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), update.capture(), eq(ChatSequence.class));
+        Number max = (Number) update.getValue().getUpdateObject().get("$max", Document.class).get("persistedSeq");
+        assertEquals(expected, max.longValue());
+        sequence.setPersistedSeq(max.longValue());
+    }
+}